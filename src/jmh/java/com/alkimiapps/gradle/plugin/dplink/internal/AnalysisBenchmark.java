@@ -0,0 +1,61 @@
+package com.alkimiapps.gradle.plugin.dplink.internal;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmarks of the in-memory parts of dplink's analysis: parsing jdeps output and assembling the app classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class AnalysisBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int jarCount;
+
+    private List<String> jdepsOutputLines;
+    private List<String> jarNames;
+
+    @Setup
+    public void setUp() {
+        // roughly what jdeps --list-deps prints for a typical jar, for each of the jars
+        this.jdepsOutputLines = new ArrayList<>();
+        for (int i = 0; i < this.jarCount; i++) {
+            this.jdepsOutputLines.add("   java.base");
+            this.jdepsOutputLines.add("   java.base/sun.security.util");
+            this.jdepsOutputLines.add("   java.logging");
+            this.jdepsOutputLines.add("   java.sql");
+            this.jdepsOutputLines.add("   JDK removed internal API/sun.misc.BASE64Encoder");
+        }
+        this.jarNames = IntStream.range(0, this.jarCount)
+                .mapToObj(i -> String.format("lib-%04d.jar", i))
+                .collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public Set<String> parseJdepsListDeps() {
+        Set<String> javaModules = new HashSet<>();
+        this.jdepsOutputLines.forEach(line -> DplinkExecutor.listDepsJavaModule(line).ifPresent(javaModules::add));
+        return javaModules;
+    }
+
+    @Benchmark
+    public String classpath() {
+        return DplinkExecutor.classpath(this.jarNames);
+    }
+}
@@ -0,0 +1,69 @@
+package com.alkimiapps.gradle.plugin.dplink.internal;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import com.alkimiapps.javatools.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmarks of the full dplink pipeline, from analysing the jars to creating the app script, without the jdeps
+ * cache, the daemon's memory of analyses or the image cache i.e. every jar is hashed and analysed and the image is
+ * linked by jlink on every invocation. Restoring an image from the image cache instead is benchmarked by
+ * {@link ImageCacheBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class DplinkBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int jarCount;
+
+    @Param({"jdeps", "bytecode"})
+    public String analysisMode;
+
+    private final Path benchmarkDir = Paths.get(System.getProperty("java.io.tmpdir"), "dplink-jmh-pipeline");
+    private final Path buildDir = benchmarkDir.resolve("build");
+    private DplinkConfig dplinkConfig;
+
+    @Setup(Level.Trial)
+    public void createLibs() throws IOException {
+        SyntheticLibs.create(this.buildDir.resolve("libs"), this.jarCount);
+
+        this.dplinkConfig = new DplinkConfig();
+        this.dplinkConfig.setBuildFolderPath(this.buildDir);
+        this.dplinkConfig.setBuildLibsDir(this.buildDir.resolve("libs"));
+        this.dplinkConfig.setOutputDir(this.buildDir.resolve("app"));
+        this.dplinkConfig.setMainClassName(Optional.of(SyntheticLibs.MAIN_CLASS));
+        this.dplinkConfig.setExecutableJar(Optional.of("lib-0000.jar"));
+        this.dplinkConfig.setJdepsBatchSize(0);
+        this.dplinkConfig.setAnalysisMode(AnalysisMode.named(this.analysisMode));
+    }
+
+    @Setup(Level.Invocation)
+    public void clearCaches() throws IOException {
+        Path jdepsCacheDir = this.buildDir.resolve("dplink");
+        if (Files.exists(jdepsCacheDir)) {
+            FileUtils.forceDelete(jdepsCacheDir.toFile());
+        }
+        AnalysisService.get().clear();
+    }
+
+    @Benchmark
+    public void dplink() {
+        new DplinkExecutor().dplink(this.dplinkConfig);
+    }
+}
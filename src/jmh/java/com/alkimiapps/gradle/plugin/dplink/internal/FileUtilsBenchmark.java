@@ -0,0 +1,93 @@
+package com.alkimiapps.gradle.plugin.dplink.internal;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+import com.alkimiapps.javatools.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmarks of copying a libs directory into an image and of deleting an image.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class FileUtilsBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int jarCount;
+
+    private final Path benchmarkDir = Paths.get(System.getProperty("java.io.tmpdir"), "dplink-jmh-fileutils");
+    private final Path libsDir = benchmarkDir.resolve("libs");
+    private final Path copyDir = benchmarkDir.resolve("copy");
+
+    @Setup(Level.Trial)
+    public void createLibs() throws IOException {
+        SyntheticLibs.create(this.libsDir, this.jarCount);
+    }
+
+    @Setup(Level.Invocation)
+    public void resetCopy() throws IOException {
+        if (Files.exists(this.copyDir)) {
+            FileUtils.forceDelete(this.copyDir.toFile());
+        }
+    }
+
+    @Benchmark
+    public void copyDirectory() throws IOException {
+        FileUtils.copyDirectory(this.libsDir.toFile(), this.copyDir.toFile());
+    }
+
+    @Benchmark
+    public long syncDirectory() throws IOException {
+        return FileUtils.syncDirectory(this.libsDir, this.copyDir, false);
+    }
+
+    @Benchmark
+    public long syncDirectoryLinked() throws IOException {
+        return FileUtils.syncDirectory(this.libsDir, this.copyDir, true);
+    }
+
+    /**
+     * A separate state so that there's a copy to delete before each invocation.
+     */
+    @State(Scope.Benchmark)
+    public static class Copied {
+
+        @Param({"10", "100", "1000"})
+        public int jarCount;
+
+        private final Path benchmarkDir = Paths.get(System.getProperty("java.io.tmpdir"), "dplink-jmh-delete");
+        private final Path libsDir = benchmarkDir.resolve("libs");
+        final Path copyDir = benchmarkDir.resolve("copy");
+
+        @Setup(Level.Trial)
+        public void createLibs() throws IOException {
+            SyntheticLibs.create(this.libsDir, this.jarCount);
+        }
+
+        @Setup(Level.Invocation)
+        public void copy() throws IOException {
+            if (Files.exists(this.copyDir)) {
+                FileUtils.forceDelete(this.copyDir.toFile());
+            }
+            FileUtils.copyDirectory(this.libsDir.toFile(), this.copyDir.toFile());
+        }
+    }
+
+    @Benchmark
+    public void forceDelete(Copied copied) throws IOException {
+        FileUtils.forceDelete(copied.copyDir.toFile());
+    }
+}
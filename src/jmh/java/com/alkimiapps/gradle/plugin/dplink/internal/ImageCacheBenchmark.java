@@ -0,0 +1,64 @@
+package com.alkimiapps.gradle.plugin.dplink.internal;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+import java.util.spi.ToolProvider;
+
+import com.alkimiapps.javatools.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmark of restoring an image from the image cache, which is what replaces jlink when an image with the same java
+ * modules has been linked before. The cache is in the same directory as the restored image so its files are hard
+ * linked, as they are when the image cache is on the same file store as the build.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ImageCacheBenchmark {
+
+    private static final String IMAGE_KEY = "benchmark";
+
+    private final Path benchmarkDir = Paths.get(System.getProperty("java.io.tmpdir"), "dplink-jmh-image-cache");
+    private final Path imageDir = benchmarkDir.resolve("image");
+    private final Path restoredDir = benchmarkDir.resolve("restored");
+    private ImageCache imageCache;
+
+    @Setup(Level.Trial)
+    public void cacheImage() throws IOException {
+        if (Files.exists(this.benchmarkDir)) {
+            FileUtils.forceDelete(this.benchmarkDir.toFile());
+        }
+        // the java modules of a typical app image
+        ToolProvider jlink = ToolProvider.findFirst("jlink").orElseThrow(() -> new IllegalStateException("No jlink"));
+        int exitCode = jlink.run(System.out, System.err, "--add-modules", "java.base,java.logging,java.sql,java.xml",
+                "--no-header-files", "--no-man-pages", "--compress=2", "--output", this.imageDir.toString());
+        if (exitCode != 0) {
+            throw new IllegalStateException("jlink failed with exit code " + exitCode);
+        }
+        this.imageCache = new ImageCache(this.benchmarkDir.resolve("cache"), 2048 * FileUtils.ONE_MB);
+        this.imageCache.store(IMAGE_KEY, this.imageDir);
+    }
+
+    @Setup(Level.Invocation)
+    public void resetRestored() throws IOException {
+        if (Files.exists(this.restoredDir)) {
+            FileUtils.forceDelete(this.restoredDir.toFile());
+        }
+    }
+
+    @Benchmark
+    public boolean restore() {
+        return this.imageCache.restore(IMAGE_KEY, this.restoredDir);
+    }
+}
@@ -0,0 +1,78 @@
+package com.alkimiapps.gradle.plugin.dplink.internal;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.util.List;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.zip.ZipEntry;
+
+import com.alkimiapps.javatools.FileUtils;
+
+/**
+ * Generates libs directories of synthetic jars for the benchmarks.
+ * <p>
+ * Each jar holds a class that depends on java.sql and java.logging (so jdeps has something to find) plus an entry
+ * that makes the content of every jar different (so that jars are not cache hits for each other).
+ */
+class SyntheticLibs {
+
+    static final String MAIN_CLASS = LibClass.class.getName();
+
+    /**
+     * @param libsDir the libs directory to create, replacing any existing directory
+     * @param jarCount the number of jars
+     * @return the jar names, in order
+     */
+    static List<String> create(Path libsDir, int jarCount) throws IOException {
+        if (Files.exists(libsDir)) {
+            FileUtils.forceDelete(libsDir.toFile());
+        }
+        Files.createDirectories(libsDir);
+
+        byte[] libClass = classBytes(LibClass.class);
+        List<String> jarNames = IntStream.range(0, jarCount)
+                .mapToObj(i -> String.format("lib-%04d.jar", i))
+                .collect(Collectors.toList());
+        for (int i = 0; i < jarCount; i++) {
+            Manifest manifest = new Manifest();
+            manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+            manifest.getMainAttributes().put(Attributes.Name.MAIN_CLASS, MAIN_CLASS);
+            try (OutputStream outputStream = Files.newOutputStream(libsDir.resolve(jarNames.get(i)));
+                 JarOutputStream jarOutputStream = new JarOutputStream(outputStream, manifest)) {
+                jarOutputStream.putNextEntry(new ZipEntry(MAIN_CLASS.replace('.', '/') + ".class"));
+                jarOutputStream.write(libClass);
+                jarOutputStream.closeEntry();
+                jarOutputStream.putNextEntry(new ZipEntry("lib-id.txt"));
+                jarOutputStream.write(jarNames.get(i).getBytes(StandardCharsets.UTF_8));
+                jarOutputStream.closeEntry();
+            }
+        }
+        return jarNames;
+    }
+
+    private static byte[] classBytes(Class<?> type) throws IOException {
+        try (InputStream inputStream = type.getClassLoader().getResourceAsStream(type.getName().replace('.', '/') + ".class")) {
+            return inputStream.readAllBytes();
+        }
+    }
+
+    static class LibClass {
+        public static void main(String[] args) throws Exception {
+            Logger.getLogger("lib").info("catalog " + catalog(null));
+        }
+
+        static String catalog(Connection connection) throws Exception {
+            return connection == null ? "" : connection.getCatalog();
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.alkimiapps.gradle.plugin.dplink;
+
+import org.gradle.api.Task;
+import org.gradle.api.internal.project.ProjectInternal;
+import org.gradle.initialization.BuildCancellationToken;
+
+/**
+ * Interrupts the thread running a task action when the build is cancelled (e.g. by ctrl-c), until it's closed.
+ * <p>
+ * Not every gradle version the plugin supports interrupts the task actions of a cancelled build. Gradle waits a few
+ * seconds for a cancelled build to finish and then stops the daemon, which would lose the jar analyses kept in the
+ * daemon and could leave forked tools running. The interrupt stops the dplink tools (see ToolRunner) and the watcher
+ * in time. Gradle's cancellation token is internal but it's the same in all the gradle versions the plugin supports.
+ */
+class BuildCancellation implements AutoCloseable {
+
+    private final BuildCancellationToken cancellationToken;
+    private final Runnable interruptAction;
+
+    /**
+     * @param task the task whose action is running on the current thread
+     */
+    BuildCancellation(Task task) {
+        this.cancellationToken = ((ProjectInternal) task.getProject()).getServices().get(BuildCancellationToken.class);
+        Thread actionThread = Thread.currentThread();
+        this.interruptAction = actionThread::interrupt;
+        if (this.cancellationToken.addCallback(this.interruptAction)) {
+            // already cancelled
+            actionThread.interrupt();
+        }
+    }
+
+    /**
+     * @return true if the build has been cancelled
+     */
+    boolean isCancelled() {
+        return this.cancellationToken.isCancellationRequested();
+    }
+
+    @Override
+    public void close() {
+        this.cancellationToken.removeCallback(this.interruptAction);
+        // the thread runs other work once the action is done, so it's not left interrupted by a late cancellation
+        Thread.interrupted();
+    }
+}
@@ -0,0 +1,32 @@
+package com.alkimiapps.gradle.plugin.dplink;
+
+import lombok.Data;
+
+/**
+ * An application of the dplink task: one of several apps that share an image, each with its own launcher (bin/name)
+ * and its jars in its own lib directory (lib/name). Applications are named in the task's applications block e.g.
+ * <pre>
+ * applications {
+ *     orders {
+ *         mainClassName = "com.example.orders.Main"
+ *         executableJar = "orders.jar"
+ *         libs = project(':orders').configurations.runtimeClasspath + project(':orders').jar.outputs.files
+ *     }
+ * }
+ * </pre>
+ */
+@Data
+public class DplinkApplication {
+
+    private final String name;
+
+    // "" for not set, as for the task's properties, an application must set its mainClassName
+    private String mainClassName = "";
+    private String executableJar = "";
+    private String jvmArgs = "";
+    private String appArgs = "";
+    private String trainingMainClass = "";
+    private String trainingArgs = "";
+    // anything that project.files() accepts, no libs means the task's libs
+    private Object libs;
+}
@@ -0,0 +1,25 @@
+package com.alkimiapps.gradle.plugin.dplink;
+
+import lombok.Data;
+
+/**
+ * A target of the dplink task: a java installation to create an image from (e.g. a JDK for some other platform) and
+ * where to create the image. Targets are named in the task's targets block e.g.
+ * <pre>
+ * targets {
+ *     linuxAarch64 {
+ *         modulesHome = "/opt/jdks/linux-aarch64"
+ *         outputDir = "build/app-linux-aarch64"
+ *     }
+ * }
+ * </pre>
+ */
+@Data
+public class DplinkTarget {
+
+    private final String name;
+
+    // "" for not set, as for the task's properties, a target must set its modulesHome
+    private String modulesHome = "";
+    private String outputDir = "";
+}
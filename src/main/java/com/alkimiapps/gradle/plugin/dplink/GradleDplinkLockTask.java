@@ -0,0 +1,24 @@
+package com.alkimiapps.gradle.plugin.dplink;
+
+import com.alkimiapps.gradle.plugin.dplink.internal.DplinkConfig;
+import com.alkimiapps.gradle.plugin.dplink.internal.LockMode;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.tasks.TaskAction;
+
+/**
+ * The Gradle plugin dplinkLock task, which writes the lock file (dplink.lock by default) of the java modules on which
+ * the app's jars depend, as configured for the dplink task. Builds whose jars match the lock (e.g. CI builds of a
+ * commit that includes the lock file) link the locked java modules without analysing the jars.
+ * <p>
+ * The task always runs, i.e. it's never up to date, since writing the lock is the point of running it.
+ */
+public class GradleDplinkLockTask extends DefaultTask {
+
+    @TaskAction
+    public void run() {
+        GradleDplinkTask dplinkTask = getProject().getTasks().withType(GradleDplinkTask.class).getByName(GradleDplinkPlugin.TASK_NAME);
+        DplinkConfig dplinkConfig = dplinkTask.dplinkConfig();
+        dplinkConfig.setLockMode(LockMode.WRITE);
+        GradleDplinkTask.dplink(this, dplinkConfig);
+    }
+}
@@ -3,16 +3,38 @@ package com.alkimiapps.gradle.plugin.dplink;
 import org.gradle.api.Project;
 import org.gradle.api.Plugin;
 import org.gradle.api.Task;
+import org.gradle.api.plugins.JavaPlugin;
+
+import static com.alkimiapps.javatools.Sugar.ifThen;
 
 /**
  * The Gradle Plugin implementation class for Dplink.
  */
 public class GradleDplinkPlugin implements Plugin<Project> {
-    private static final String TASK_NAME = "dplink";
+    static final String TASK_NAME = "dplink";
+    private static final String LOCK_TASK_NAME = "dplinkLock";
+    private static final String WATCH_TASK_NAME = "dplinkWatch";
 
+    // tasks.register (which replaces create in later gradle versions) needs gradle 4.9 and the plugin supports 4.6
+    @SuppressWarnings("deprecation")
     @Override
     public void apply(Project project) {
         Task dplinkTask = project.getTasks().create(TASK_NAME, GradleDplinkTask.class);
-        dplinkTask.dependsOn(project.getTasksByName("build", false));
+        Task dplinkLockTask = project.getTasks().create(LOCK_TASK_NAME, GradleDplinkLockTask.class);
+        Task dplinkWatchTask = project.getTasks().create(WATCH_TASK_NAME, GradleDplinkWatchTask.class);
+        this.dependOnLibs(project, dplinkTask);
+        this.dependOnLibs(project, dplinkLockTask);
+        this.dependOnLibs(project, dplinkWatchTask);
+    }
+
+    private void dependOnLibs(Project project, Task task) {
+        // just what the app is made of i.e. its jar and its runtime dependencies, rather than the whole build (tests etc)
+        project.getPlugins().withType(JavaPlugin.class, javaPlugin -> {
+            task.dependsOn(JavaPlugin.JAR_TASK_NAME);
+            task.dependsOn(project.getConfigurations().getByName(JavaPlugin.RUNTIME_CLASSPATH_CONFIGURATION_NAME));
+        });
+        // otherwise whatever puts jars in build/libs
+        project.afterEvaluate(evaluatedProject -> ifThen(!evaluatedProject.getPlugins().hasPlugin(JavaPlugin.class),
+                () -> task.dependsOn(evaluatedProject.getTasksByName("build", false))));
     }
 }
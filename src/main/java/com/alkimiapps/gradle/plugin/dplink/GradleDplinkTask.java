@@ -1,63 +1,375 @@
 package com.alkimiapps.gradle.plugin.dplink;
 
+import java.io.File;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
 
+import com.alkimiapps.gradle.plugin.dplink.internal.Application;
 import com.alkimiapps.gradle.plugin.dplink.internal.DplinkConfig;
 import com.alkimiapps.gradle.plugin.dplink.internal.DplinkExecutor;
+import com.alkimiapps.gradle.plugin.dplink.internal.JdkRelease;
+import com.alkimiapps.gradle.plugin.dplink.internal.AnalysisMode;
+import com.alkimiapps.gradle.plugin.dplink.internal.LinkProfile;
+import com.alkimiapps.gradle.plugin.dplink.internal.LockMode;
+import com.alkimiapps.gradle.plugin.dplink.internal.LinkTarget;
+import com.alkimiapps.javatools.FileUtils;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
+import org.gradle.api.Action;
 import org.gradle.api.DefaultTask;
-import org.gradle.api.Project;
+import org.gradle.api.GradleException;
+import org.gradle.api.NamedDomainObjectContainer;
+import org.gradle.api.Task;
+import org.gradle.api.file.FileCollection;
+import org.gradle.api.plugins.JavaPlugin;
+import org.gradle.api.tasks.CacheableTask;
 import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputDirectory;
+import org.gradle.api.tasks.InputFiles;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.OutputDirectories;
+import org.gradle.api.tasks.OutputFile;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
 import org.gradle.api.tasks.TaskAction;
+import org.gradle.api.tasks.options.Option;
 
 import static com.alkimiapps.javatools.Strings.hasChars;
+import static com.alkimiapps.javatools.Sugar.fatalGuard;
 import static com.alkimiapps.javatools.Sugar.ifThen;
 import static java.util.Optional.of;
 
 /**
  * The Gradle plugin dplink task.
+ * <p>
+ * The task is cacheable: its inputs are all content or machine independent values (e.g. a JDK release rather than
+ * the path to a JDK) and the created image does not contain any absolute paths. The exception is an image with an
+ * AppCDS archive, which records the absolute paths of the app's jars, so the task isn't cached when appCds is set.
  */
+@CacheableTask
 @Data
 @EqualsAndHashCode(callSuper = true)
 public class GradleDplinkTask extends DefaultTask {
 
     // Gradle insists that all @Input properties must have a value. So, we use "" to indicate no value.
-    private @Input String javaHome = "";
-    private @Input String modulesHome = "";
-    private @Input String outputDir = "";
+    private @Internal String javaHome = "";
+    private @Internal String modulesHome = "";
+    private @Internal String outputDir = "";
     private @Input String executableJar = "";
     private @Input String mainClassName = "";
     private @Input String jvmArgs = "";
     private @Input String appArgs = "";
     private @Input String appName = "";
+    private @Input String linkProfile = "";
+    private @Input String analysisMode = "";
+    private @Input String jlinkArgs = "";
+    private @Input String trainingMainClass = "";
+    private @Input String trainingArgs = "";
+    private @Input boolean appCds;
+    private @Input boolean orderResources;
+    private @Input boolean jliClasses;
+    private @Input boolean linkApp;
     private @Input boolean allJavaModules;
     private @Input boolean fatJar;
-    private @Input boolean verbose;
+
+    // images for other java installations (e.g. other platforms) of the same java modules, instead of the modulesHome
+    private @Internal NamedDomainObjectContainer<DplinkTarget> targets = getProject().container(DplinkTarget.class);
+
+    // several apps in the same image, instead of the mainClassName
+    private @Internal NamedDomainObjectContainer<DplinkApplication> applications = getProject().container(DplinkApplication.class);
+
+    // these only affect how the image is built, not what's in it, so they are not inputs for up-to-date checking
+    private @Internal String sharedCacheDir = "";
+    private @Internal long maxCacheEntries = 10000;
+    private @Internal boolean imageCache = true;
+    private @Internal String imageCacheDir = "";
+    private @Internal long maxImageCacheMegabytes = 2048;
+    private @Internal int jdepsBatchSize = 1;
+    private @Internal int maxParallelTools;
+    private @Internal long toolTimeoutSeconds = 20 * 60;
+    private @Internal boolean linkLibs;
+    private @Internal boolean verbose;
+    private @Internal boolean virtualThreads;
+    private @Internal String lockFile = "";
+    @Option(option = "verify-lock", description = "Fails if the java modules are not locked by an up to date dplink.lock")
+    private @Internal boolean verifyLock;
+
+    /**
+     * @return the release of the JDK whose jdeps and jlink are used - rather than the path to it, which will differ
+     * between machines that can share cached images
+     */
+    @Input
+    public String getJavaRelease() {
+        return JdkRelease.of(hasChars(this.getJavaHome()) ? Paths.get(this.getJavaHome()) : Paths.get(System.getProperty("java.home")));
+    }
+
+    /**
+     * @return the jars whose java module dependencies are linked into the image (and which are copied into the image
+     * when there is a mainClassName) - their names matter as well as their content because they end up in the
+     * classpath of the app script. For a java project these are the jar and the runtimeClasspath, and a fatJar's
+     * executableJar in build/libs (e.g. a shadow jar), otherwise they are the jars in build/libs.
+     */
+    @InputFiles
+    @PathSensitive(PathSensitivity.NAME_ONLY)
+    public FileCollection getLibs() {
+        if (!this.isJavaProject()) {
+            return getProject().fileTree(this.buildLibsDir());
+        }
+        FileCollection fatJar = this.fatJar && hasChars(this.getExecutableJar()) ?
+                getProject().files(this.buildLibsDir().resolve(this.getExecutableJar()).toFile()).filter(File::isFile) :
+                getProject().files();
+        return this.jarTask().getOutputs().getFiles()
+                .plus(getProject().getConfigurations().getByName(JavaPlugin.RUNTIME_CLASSPATH_CONFIGURATION_NAME))
+                .plus(fatJar)
+                // e.g. not the classes directories of project dependencies that are not jars
+                .filter(file -> file.getName().endsWith(".jar"));
+    }
+
+    /**
+     * @return the jars of the applications that have their own
+     */
+    @InputFiles
+    @PathSensitive(PathSensitivity.NAME_ONLY)
+    public FileCollection getApplicationLibs() {
+        return getProject().files(this.applications.stream().map(this::applicationLibs).toArray());
+    }
+
+    /**
+     * @return what makes up each application, including the names of its jars - which are in its lib directory
+     */
+    @Input
+    public List<String> getApplicationSettings() {
+        return this.applications.stream()
+                .map(application -> String.join("\n", application.getName(), application.getMainClassName(),
+                        application.getExecutableJar(), application.getJvmArgs(), application.getAppArgs(),
+                        application.getTrainingMainClass(), application.getTrainingArgs(),
+                        this.applicationLibs(application).getFiles().stream().map(File::getName).sorted()
+                                .collect(Collectors.joining(" "))))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * @return the jmods directories of the java installations that are the bases of the images
+     */
+    @InputFiles
+    @PathSensitive(PathSensitivity.RELATIVE)
+    public FileCollection getJmodsDirs() {
+        return getProject().files(this.linkTargets().stream()
+                .map(linkTarget -> linkTarget.getModulesHome().resolve("jmods").toFile())
+                .toArray());
+    }
+
+    /**
+     * @return the directories in which the images are created, by target name
+     */
+    @OutputDirectories
+    public Map<String, File> getOutputDirectories() {
+        Map<String, File> outputDirectories = new LinkedHashMap<>();
+        if (this.targets.isEmpty()) {
+            outputDirectories.put("main", this.outputDirPath().toFile());
+        }
+        this.targets.forEach(target -> outputDirectories.put(target.getName(), this.targetOutputDirPath(target).toFile()));
+        return outputDirectories;
+    }
+
+    /**
+     * @return the file the dplink report is written to
+     */
+    @OutputFile
+    public File getReportFile() {
+        return DplinkConfig.reportFile(this.buildFolderPath()).toFile();
+    }
+
+    /**
+     * Configure the targets i.e. the java installations to create images from instead of the modulesHome.
+     *
+     * @param action configures the targets
+     */
+    public void targets(Action<? super NamedDomainObjectContainer<DplinkTarget>> action) {
+        action.execute(this.targets);
+    }
+
+    /**
+     * Configure the applications i.e. several apps to link into the same image instead of the mainClassName.
+     *
+     * @param action configures the applications
+     */
+    public void applications(Action<? super NamedDomainObjectContainer<DplinkApplication>> action) {
+        action.execute(this.applications);
+    }
+
+    public GradleDplinkTask() {
+        // an AppCDS archive taken from the cache into another checkout would be silently ignored by the JVM
+        getOutputs().cacheIf("the image has no AppCDS archive, which records absolute paths", task -> !this.appCds);
+    }
 
     @TaskAction
     public void run() {
+        DplinkConfig dplinkConfig = this.dplinkConfig();
+        ifThen(this.verifyLock, () -> dplinkConfig.setLockMode(LockMode.VERIFY));
+        dplink(this, dplinkConfig);
+    }
 
-        Project project = getProject();
-        Path buildFolderPath = project.getBuildDir().toPath().toAbsolutePath();
+    /**
+     * @return the dplink config of the task's properties
+     */
+    DplinkConfig dplinkConfig() {
+        Path buildFolderPath = this.buildFolderPath();
 
         DplinkConfig dplinkConfig = new DplinkConfig();
         dplinkConfig.setBuildFolderPath(buildFolderPath);
-        dplinkConfig.setBuildLibsDir(buildFolderPath.resolve("libs"));
-        dplinkConfig.setOutputDir(buildFolderPath.resolve("app"));
+        dplinkConfig.setBuildLibsDir(this.buildLibsDir());
+        if (this.isJavaProject()) {
+            dplinkConfig.setLibs(this.getLibs().getFiles().stream().map(File::toPath).collect(Collectors.toList()));
+            // the jar built by the project is the executable jar unless it's some other (e.g. a fat) jar
+            ifThen(!hasChars(this.getExecutableJar()), () -> dplinkConfig.setExecutableJar(
+                    of(this.jarTask().getOutputs().getFiles().getSingleFile().getName())));
+        }
+        dplinkConfig.setOutputDir(this.outputDirPath());
+        dplinkConfig.setModulesHome(this.modulesHomePath());
+        ifThen(!this.targets.isEmpty(), () -> dplinkConfig.setTargets(this.linkTargets()));
         ifThen(hasChars(this.getAppArgs()), () -> dplinkConfig.setAppArgs(of(this.getAppArgs())));
         ifThen(hasChars(this.getJvmArgs()), () -> dplinkConfig.setJvmArgs(of(this.getJvmArgs())));
         ifThen(hasChars(this.getMainClassName()), () -> dplinkConfig.setMainClassName(of(this.getMainClassName())));
         ifThen(hasChars(this.getJavaHome()), () -> dplinkConfig.setJavaHome(Paths.get(this.getJavaHome())));
-        ifThen(hasChars(this.getModulesHome()), () -> dplinkConfig.setModulesHome(Paths.get(this.getModulesHome())));
-        ifThen(hasChars(this.getOutputDir()), () -> dplinkConfig.setOutputDir(Paths.get(this.getOutputDir())));
         ifThen(hasChars(this.getExecutableJar()), () -> dplinkConfig.setExecutableJar(of(this.getExecutableJar())));
+        ifThen(!this.applications.isEmpty(), () -> dplinkConfig.setApplications(this.launchedApplications(dplinkConfig.getExecutableJar())));
         ifThen(hasChars(this.getAppName()), () -> dplinkConfig.setAppName(this.getAppName()));
+        ifThen(hasChars(this.getLinkProfile()), () -> dplinkConfig.setLinkProfile(LinkProfile.named(this.getLinkProfile())));
+        ifThen(hasChars(this.getAnalysisMode()), () -> dplinkConfig.setAnalysisMode(AnalysisMode.named(this.getAnalysisMode())));
+        ifThen(hasChars(this.getJlinkArgs().trim()), () -> dplinkConfig.setJlinkArgs(Arrays.asList(this.getJlinkArgs().trim().split("\\s+"))));
+        ifThen(hasChars(this.getSharedCacheDir()), () -> dplinkConfig.setSharedCacheDir(of(Paths.get(this.getSharedCacheDir()))));
+        dplinkConfig.setMaxCacheEntries(this.maxCacheEntries);
+        ifThen(this.imageCache, () -> dplinkConfig.setImageCacheDir(of(this.imageCacheDirPath())));
+        dplinkConfig.setMaxImageCacheBytes(this.maxImageCacheMegabytes * FileUtils.ONE_MB);
+        dplinkConfig.setJdepsBatchSize(this.jdepsBatchSize);
+        dplinkConfig.setMaxParallelTools(this.maxParallelTools);
+        dplinkConfig.setVirtualThreads(this.virtualThreads);
+        dplinkConfig.setToolTimeoutSeconds(this.toolTimeoutSeconds);
+        ifThen(hasChars(this.getTrainingMainClass()), () -> dplinkConfig.setTrainingMainClass(of(this.getTrainingMainClass())));
+        ifThen(hasChars(this.getTrainingArgs()), () -> dplinkConfig.setTrainingArgs(of(this.getTrainingArgs())));
+        dplinkConfig.setAppCds(this.appCds);
+        dplinkConfig.setOrderResources(this.orderResources);
+        dplinkConfig.setJliClasses(this.jliClasses);
+        dplinkConfig.setLinkLibs(this.linkLibs);
+        dplinkConfig.setLinkApp(this.linkApp);
         dplinkConfig.setAllJavaModules( this.allJavaModules );
         dplinkConfig.setFatJar(this.fatJar);
+        dplinkConfig.setLockFile(of(this.lockFilePath()));
         dplinkConfig.setVerbose(this.verbose);
+        return dplinkConfig;
+    }
+
+    /**
+     * @param task the task whose action dplinks, which is stopped if the build is cancelled
+     * @param dplinkConfig what to dplink
+     */
+    static void dplink(Task task, DplinkConfig dplinkConfig) {
+        try (BuildCancellation buildCancellation = new BuildCancellation(task)) {
+            try {
+                new DplinkExecutor().dplink(dplinkConfig);
+            } catch (RuntimeException e) {
+                // fails the task, never the daemon
+                throw new GradleException("Dplink " + (buildCancellation.isCancelled() ? "cancelled: " : "failed: ") +
+                        e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * @return the lock file, if it exists - it determines the java modules in the image when it matches the libs
+     */
+    @InputFiles
+    @PathSensitive(PathSensitivity.NONE)
+    public FileCollection getLockFiles() {
+        return getProject().files(this.lockFilePath()).filter(File::exists);
+    }
+
+    Path lockFilePath() {
+        return hasChars(this.getLockFile()) ? Paths.get(this.getLockFile()) : getProject().getProjectDir().toPath().resolve("dplink.lock");
+    }
+
+    // deprecated in later gradle versions but, unlike the layout's build directory that replaces it, the same in all the
+    // gradle versions the plugin supports
+    @SuppressWarnings("deprecation")
+    private Path buildFolderPath() {
+        return getProject().getBuildDir().toPath().toAbsolutePath();
+    }
+
+    private Path buildLibsDir() {
+        return this.buildFolderPath().resolve("libs");
+    }
+
+    private boolean isJavaProject() {
+        return getProject().getPlugins().hasPlugin(JavaPlugin.class);
+    }
+
+    private Task jarTask() {
+        return getProject().getTasks().getByName(JavaPlugin.JAR_TASK_NAME);
+    }
+
+    private Path imageCacheDirPath() {
+        return hasChars(this.getImageCacheDir()) ? Paths.get(this.getImageCacheDir()) :
+                getProject().getGradle().getGradleUserHomeDir().toPath().resolve("caches/dplink/images");
+    }
+
+    private Path modulesHomePath() {
+        return Paths.get(hasChars(this.getModulesHome()) ? this.getModulesHome() : System.getProperty("java.home"));
+    }
+
+    private List<LinkTarget> linkTargets() {
+        if (this.targets.isEmpty()) {
+            return Arrays.asList(new LinkTarget(this.modulesHomePath(), this.outputDirPath()));
+        }
+        return this.targets.stream()
+                .map(target -> {
+                    fatalGuard(hasChars(target.getModulesHome()), "No modulesHome for dplink target " + target.getName());
+                    return new LinkTarget(Paths.get(target.getModulesHome()), this.targetOutputDirPath(target));
+                })
+                .collect(Collectors.toList());
+    }
+
+    private List<Application> launchedApplications(Optional<String> executableJar) {
+        fatalGuard(!hasChars(this.getMainClassName()), "Use either mainClassName or applications, not both");
+        return this.applications.stream()
+                .map(application -> {
+                    fatalGuard(hasChars(application.getMainClassName()), "No mainClassName for dplink application " + application.getName());
+                    FileCollection libs = this.applicationLibs(application);
+                    // an application without jars of its own runs from the task's executable jar
+                    Optional<String> applicationExecutableJar = hasChars(application.getExecutableJar()) ?
+                            of(application.getExecutableJar()) : libs.isEmpty() ? executableJar : Optional.empty();
+                    return new Application(application.getName(), application.getMainClassName(),
+                            applicationExecutableJar, optional(application.getJvmArgs()),
+                            optional(application.getAppArgs()), optional(application.getTrainingMainClass()),
+                            optional(application.getTrainingArgs()),
+                            libs.getFiles().stream().map(File::toPath).collect(Collectors.toList()));
+                })
+                .collect(Collectors.toList());
+    }
+
+    private FileCollection applicationLibs(DplinkApplication application) {
+        return getProject().files(application.getLibs() != null ? application.getLibs() : Collections.emptyList())
+                // e.g. not the classes directories of project dependencies that are not jars
+                .filter(file -> file.getName().endsWith(".jar"));
+    }
+
+    private static Optional<String> optional(String value) {
+        return hasChars(value) ? of(value) : Optional.empty();
+    }
+
+    private Path targetOutputDirPath(DplinkTarget target) {
+        return hasChars(target.getOutputDir()) ? getProject().file(target.getOutputDir()).toPath() :
+                this.buildFolderPath().resolve("app-" + target.getName());
+    }
 
-        new DplinkExecutor().dplink(dplinkConfig);
+    private Path outputDirPath() {
+        return hasChars(this.getOutputDir()) ? getProject().file(this.getOutputDir()).toPath() : this.buildFolderPath().resolve("app");
     }
 }
@@ -0,0 +1,21 @@
+package com.alkimiapps.gradle.plugin.dplink;
+
+import com.alkimiapps.gradle.plugin.dplink.internal.DplinkWatcher;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.tasks.TaskAction;
+
+/**
+ * The Gradle plugin dplinkWatch task, which dplinks as configured for the dplink task and then keeps the image up to
+ * date as the app's jars change (e.g. when they're rebuilt by gradle jar in another terminal), until the build is
+ * cancelled (e.g. by ctrl-c). See {@link DplinkWatcher}.
+ */
+public class GradleDplinkWatchTask extends DefaultTask {
+
+    @TaskAction
+    public void run() {
+        GradleDplinkTask dplinkTask = getProject().getTasks().withType(GradleDplinkTask.class).getByName(GradleDplinkPlugin.TASK_NAME);
+        try (BuildCancellation buildCancellation = new BuildCancellation(this)) {
+            new DplinkWatcher(dplinkTask.dplinkConfig()).watch(buildCancellation::isCancelled);
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.alkimiapps.gradle.plugin.dplink.internal;
+
+import java.util.Arrays;
+import java.util.Locale;
+import javax.annotation.Nonnull;
+
+import static com.alkimiapps.javatools.Sugar.fatalGuard;
+
+/**
+ * How the java modules on which jars depend are found.
+ */
+public enum AnalysisMode {
+
+    /**
+     * Run jdeps on the jars.
+     */
+    JDEPS,
+
+    /**
+     * Read the class files of the jars directly, see {@link BytecodeAnalyzer}. Much faster than jdeps and no tools
+     * are run, but the jars are not checked for missing dependencies the way jdeps checks them.
+     */
+    BYTECODE,
+
+    /**
+     * Find the java modules with both jdeps and the bytecode analysis, use those found by jdeps and report any jars
+     * for which the bytecode analysis differs.
+     */
+    VERIFY;
+
+    /**
+     * @param name an analysis mode name, case insensitive e.g. "bytecode"
+     * @return the analysis mode with that name
+     */
+    public static AnalysisMode named(@Nonnull String name) {
+        AnalysisMode analysisMode = Arrays.stream(values())
+                .filter(mode -> mode.name().equals(name.toUpperCase(Locale.ROOT)))
+                .findFirst()
+                .orElse(null);
+        fatalGuard(analysisMode != null, "Unknown analysisMode " + name + ", expected one of jdeps, bytecode or verify");
+        return analysisMode;
+    }
+}
@@ -0,0 +1,199 @@
+package com.alkimiapps.gradle.plugin.dplink.internal;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import javax.annotation.Nonnull;
+
+import com.alkimiapps.javatools.Hashes;
+
+/**
+ * What dplink keeps in memory for the life of the gradle daemon, i.e. across builds and shared by all the dplink
+ * tasks of a multi-project build:
+ * <ul>
+ * <li>the java modules on which jars depend, by content hash of the jar, in front of the {@link JdepsCache} on disk</li>
+ * <li>the content hashes of jars, by path, size and last modified time, so unchanged jars aren't hashed again</li>
+ * <li>the java modules, and their packages, of each java installation (the module catalog)</li>
+ * <li>permits for running tools, so that tasks running in parallel don't together run more tools at once than the
+ * largest maxParallelTools of any of them</li>
+ * </ul>
+ * The memory caches are bounded, least recently used entries are evicted beyond the bounds.
+ * <p>
+ * Gradle (as of 4.6) has no build services, so the service is a singleton of the plugin's class loader. Gradle reuses
+ * that class loader for later builds in the same daemon as long as the build script classpath doesn't change.
+ */
+class AnalysisService {
+
+    private static final int MAX_ANALYSES = 100_000;
+    private static final int MAX_JAR_HASHES = 100_000;
+    private static final int MAX_CATALOGS = 16;
+
+    private static final AnalysisService INSTANCE = new AnalysisService(0);
+
+    private final Map<String, Set<String>> analyses = lruMap(MAX_ANALYSES);
+    private final Map<String, JarHash> jarHashes = lruMap(MAX_JAR_HASHES);
+    private final Map<String, Object> catalogs = lruMap(MAX_CATALOGS);
+    private final Semaphore toolPermits;
+    private int maxRunningTools;
+
+    /**
+     * @param maxRunningTools the maximum number of tools to run at once, until some task allows more
+     */
+    AnalysisService(int maxRunningTools) {
+        this.toolPermits = new Semaphore(maxRunningTools);
+        this.maxRunningTools = maxRunningTools;
+    }
+
+    /**
+     * @return the service of this daemon
+     */
+    static AnalysisService get() {
+        return INSTANCE;
+    }
+
+    /**
+     * @param key the key of the analysis of a jar i.e. its content hash and the analyser
+     * @return the java modules on which the jar depends or empty if the jar has not been analysed in this daemon
+     */
+    Optional<Set<String>> analysis(@Nonnull String key) {
+        synchronized (this.analyses) {
+            return Optional.ofNullable(this.analyses.get(key));
+        }
+    }
+
+    /**
+     * @param key the key of the analysis of a jar i.e. its content hash and the analyser
+     * @param modules the java modules on which the jar depends
+     */
+    void putAnalysis(@Nonnull String key, @Nonnull Set<String> modules) {
+        synchronized (this.analyses) {
+            this.analyses.put(key, Collections.unmodifiableSet(modules));
+        }
+    }
+
+    /**
+     * @param jarPath a jar
+     * @return the hex encoded SHA-256 hash of the content of the jar, hashed only if the jar has changed (going by its
+     * size and last modified time) since it was last hashed in this daemon
+     */
+    String jarHash(@Nonnull Path jarPath) {
+        try {
+            String key = jarPath.toAbsolutePath().toString();
+            long size = Files.size(jarPath);
+            long lastModified = Files.getLastModifiedTime(jarPath).toMillis();
+            synchronized (this.jarHashes) {
+                JarHash jarHash = this.jarHashes.get(key);
+                if (jarHash != null && jarHash.size == size && jarHash.lastModified == lastModified) {
+                    return jarHash.hash;
+                }
+            }
+            JarHash jarHash = new JarHash(size, lastModified, Hashes.sha256(jarPath));
+            synchronized (this.jarHashes) {
+                this.jarHashes.put(key, jarHash);
+            }
+            return jarHash.hash;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @param modulesHome a java installation
+     * @return the bytecode analyser for the java modules of the installation
+     */
+    BytecodeAnalyzer bytecodeAnalyzer(@Nonnull Path modulesHome) {
+        return this.catalog("bytecode", modulesHome, () -> new BytecodeAnalyzer(modulesHome));
+    }
+
+    /**
+     * Forget the analyses and jar hashes, e.g. to measure a cold daemon.
+     */
+    void clear() {
+        synchronized (this.analyses) {
+            this.analyses.clear();
+        }
+        synchronized (this.jarHashes) {
+            this.jarHashes.clear();
+        }
+    }
+
+    /**
+     * @param maxRunningTools the maximum number of tools a task runs at once (its maxParallelTools), the permits are
+     *                        raised to this if there are fewer, so that the shared limit never caps a task's own limit
+     * @return the permits for running tools, one is held while each tool runs
+     */
+    synchronized Semaphore toolPermits(int maxRunningTools) {
+        if (maxRunningTools > this.maxRunningTools) {
+            this.toolPermits.release(maxRunningTools - this.maxRunningTools);
+            this.maxRunningTools = maxRunningTools;
+        }
+        return this.toolPermits;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T catalog(@Nonnull String kind, @Nonnull Path modulesHome, @Nonnull Supplier<T> catalog) {
+        // a java installation updated in place is a different catalog
+        String key = String.join("\n", kind, modulesHome.toAbsolutePath().toString(), JdkRelease.of(modulesHome),
+                lastModified(modulesHome));
+        synchronized (this.catalogs) {
+            Object cachedCatalog = this.catalogs.get(key);
+            if (cachedCatalog != null) {
+                return (T) cachedCatalog;
+            }
+        }
+        // created outside the lock, two tasks may both create the same catalog but that's harmless
+        T newCatalog = catalog.get();
+        synchronized (this.catalogs) {
+            this.catalogs.put(key, newCatalog);
+        }
+        return newCatalog;
+    }
+
+    /**
+     * @return when the installation's release file was last modified, or if it has none its jmods directory, which is
+     * modified when modules are added or removed, or "unknown" if it has neither
+     */
+    private static String lastModified(@Nonnull Path modulesHome) {
+        Optional<Path> stamp = Stream.of(modulesHome.resolve("release"), modulesHome.resolve("jmods"))
+                .filter(Files::exists)
+                .findFirst();
+        if (!stamp.isPresent()) {
+            return "unknown";
+        }
+        try {
+            return String.valueOf(Files.getLastModifiedTime(stamp.get()).toMillis());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static <V> Map<String, V> lruMap(int maxEntries) {
+        return new LinkedHashMap<String, V>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, V> eldest) {
+                return this.size() > maxEntries;
+            }
+        };
+    }
+
+    private static class JarHash {
+        private final long size;
+        private final long lastModified;
+        private final String hash;
+
+        JarHash(long size, long lastModified, @Nonnull String hash) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.hash = hash;
+        }
+    }
+}
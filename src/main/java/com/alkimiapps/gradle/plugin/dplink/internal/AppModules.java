@@ -0,0 +1,184 @@
+package com.alkimiapps.gradle.plugin.dplink.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.module.FindException;
+import java.lang.module.ModuleDescriptor;
+import java.lang.module.ModuleFinder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.annotation.Nonnull;
+
+import com.alkimiapps.javatools.FileUtils;
+
+import static com.alkimiapps.javatools.Sugar.fatalGuard;
+import static com.alkimiapps.javatools.Sugar.ifThen;
+
+/**
+ * The app's jars as explicit modules, so that jlink can link them into an image along with the java modules.
+ * <p>
+ * Jars that are explicit modules already are used as they are. For the others (i.e. the jars that would be automatic
+ * modules on the module path) jdeps generates a module declaration that requires the modules the jar uses and exports
+ * all of its packages. The declaration is compiled against the jar and added to a copy of the jar. The modular jars
+ * are created in a work directory, the libs themselves are left alone.
+ */
+class AppModules {
+
+    private final ToolRunner toolRunner;
+    private final ToolScheduler toolScheduler;
+    private final Path explicitModulesDir;
+    private final Path automaticModulesDir;
+    private final Path moduleInfoDir;
+    // by jar name
+    private final Map<String, String> moduleNames = new LinkedHashMap<>();
+
+    /**
+     * @param toolRunner runs jdeps, javac and jar
+     * @param toolScheduler runs javac and jar for several jars concurrently
+     * @param workDir the directory in which to create the modular jars, anything already in it is deleted
+     */
+    AppModules(@Nonnull ToolRunner toolRunner, @Nonnull ToolScheduler toolScheduler, @Nonnull Path workDir) {
+        this.toolRunner = toolRunner;
+        this.toolScheduler = toolScheduler;
+        this.explicitModulesDir = workDir.resolve("explicit");
+        this.automaticModulesDir = workDir.resolve("automatic");
+        this.moduleInfoDir = workDir.resolve("module-info");
+        try {
+            if (Files.exists(workDir)) {
+                FileUtils.forceDelete(workDir.toFile());
+            }
+            Files.createDirectories(this.explicitModulesDir);
+            Files.createDirectories(this.automaticModulesDir);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Create the modular jars.
+     *
+     * @param libPaths the app's jars
+     * @param javaRelease the release of the JDK doing the analysis, for multi-release jars
+     */
+    void create(@Nonnull List<Path> libPaths, @Nonnull String javaRelease) {
+        List<Path> automaticJars = new ArrayList<>();
+        for (Path libPath : libPaths) {
+            ModuleDescriptor descriptor = descriptor(libPath);
+            Path moduleDir = descriptor.isAutomatic() ? this.automaticModulesDir : this.explicitModulesDir;
+            Path modularJar = moduleDir.resolve(libPath.getFileName().toString());
+            try {
+                Files.copy(libPath, modularJar);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            ifThen(descriptor.isAutomatic(), () -> automaticJars.add(modularJar));
+            this.moduleNames.put(libPath.getFileName().toString(), descriptor.name());
+        }
+        if (automaticJars.isEmpty()) {
+            return;
+        }
+
+        // the declarations of all the automatic modules are generated together since they may require each other
+        List<String> jdepsArgs = new ArrayList<>(Arrays.asList("--multi-release", String.valueOf(JdkRelease.feature(javaRelease)),
+                "--module-path", this.explicitModulesDir.toString(), "--generate-module-info", this.moduleInfoDir.toString()));
+        automaticJars.forEach(jar -> jdepsArgs.add(jar.toString()));
+        this.toolRunner.run("jdeps", jdepsArgs, null);
+
+        // all compiled before any jar is updated, so that each is compiled against the others as automatic modules
+        this.toolScheduler.map(automaticJars, this::compileModuleInfo);
+        this.toolScheduler.map(automaticJars, automaticJar -> {
+            String moduleName = this.moduleName(automaticJar.getFileName().toString());
+            this.toolRunner.run("jar", Arrays.asList("--update", "--file", automaticJar.toString(),
+                    "-C", this.moduleInfoClassDir(moduleName).toString(), "module-info.class"), null);
+            return automaticJar;
+        });
+    }
+
+    /**
+     * @return the module path of the modular jars
+     */
+    String modulePath() {
+        return this.explicitModulesDir + File.pathSeparator + this.automaticModulesDir;
+    }
+
+    /**
+     * @return the names of the modules
+     */
+    List<String> moduleNames() {
+        return new ArrayList<>(new TreeSet<>(this.moduleNames.values()));
+    }
+
+    /**
+     * @param jarName the name of one of the app's jars
+     * @return the name of the module of the jar
+     */
+    String moduleName(@Nonnull String jarName) {
+        String moduleName = this.moduleNames.get(jarName);
+        fatalGuard(moduleName != null, "No module for " + jarName);
+        return moduleName;
+    }
+
+    private Path compileModuleInfo(@Nonnull Path automaticJar) {
+        String moduleName = this.moduleName(automaticJar.getFileName().toString());
+        Path moduleInfoSource = this.moduleInfoSource(moduleName);
+        Path moduleInfoClassDir = this.moduleInfoClassDir(moduleName);
+
+        // every other jar is on the module path, this one is patched into the module being compiled
+        String modulePath = Stream.concat(jars(this.explicitModulesDir).stream(), jars(this.automaticModulesDir).stream())
+                .filter(jar -> !jar.equals(automaticJar))
+                .map(Path::toString)
+                .collect(Collectors.joining(File.pathSeparator));
+        List<String> javacArgs = new ArrayList<>(Arrays.asList("-nowarn", "-d", moduleInfoClassDir.toString(),
+                "--patch-module", moduleName + "=" + automaticJar));
+        if (!modulePath.isEmpty()) {
+            javacArgs.addAll(Arrays.asList("--module-path", modulePath));
+        }
+        javacArgs.add(moduleInfoSource.toString());
+        this.toolRunner.run("javac", javacArgs, null);
+        return moduleInfoClassDir;
+    }
+
+    private Path moduleInfoClassDir(@Nonnull String moduleName) {
+        return this.moduleInfoDir.resolve(moduleName).resolve("classes");
+    }
+
+    private Path moduleInfoSource(@Nonnull String moduleName) {
+        // under versions/<release> for a multi-release jar
+        try (Stream<Path> paths = Files.walk(this.moduleInfoDir.resolve(moduleName))) {
+            Optional<Path> moduleInfoSource = paths
+                    .filter(path -> path.getFileName().toString().equals("module-info.java"))
+                    .findFirst();
+            fatalGuard(moduleInfoSource.isPresent(), "jdeps did not generate a module declaration for " + moduleName);
+            return moduleInfoSource.get();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static ModuleDescriptor descriptor(@Nonnull Path jarPath) {
+        try {
+            return ModuleFinder.of(jarPath).findAll().iterator().next().descriptor();
+        } catch (FindException e) {
+            throw new RuntimeException("Failed to make a module of " + jarPath + ", try adding an Automatic-Module-Name " +
+                    "to its manifest", e);
+        }
+    }
+
+    private static List<Path> jars(@Nonnull Path dir) {
+        try (Stream<Path> paths = Files.list(dir)) {
+            return paths.sorted().collect(Collectors.toList());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
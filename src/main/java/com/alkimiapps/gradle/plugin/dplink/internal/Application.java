@@ -0,0 +1,25 @@
+package com.alkimiapps.gradle.plugin.dplink.internal;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+import javax.annotation.Nonnull;
+
+import lombok.Data;
+
+/**
+ * An application in an image: its launcher (bin/name) and how the launcher runs it.
+ */
+@Data
+public class Application {
+    // the name of the launcher
+    private final @Nonnull String name;
+    private final @Nonnull String mainClassName;
+    private final @Nonnull Optional<String> executableJar;
+    private final @Nonnull Optional<String> jvmArgs;
+    private final @Nonnull Optional<String> appArgs;
+    private final @Nonnull Optional<String> trainingMainClass;
+    private final @Nonnull Optional<String> trainingArgs;
+    // the application's jars, empty for all the libs
+    private final @Nonnull List<Path> libs;
+}
@@ -0,0 +1,266 @@
+package com.alkimiapps.gradle.plugin.dplink.internal;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.lang.module.ModuleDescriptor;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+import javax.annotation.Nonnull;
+
+/**
+ * Finds the java modules on which jars depend by reading their class files directly, rather than by running jdeps.
+ * <p>
+ * The constant pool of each class file is parsed for the classes it refers to (class references, and the types in
+ * field and method descriptors) and the packages of those classes are mapped to the java modules containing them,
+ * according to the package tables of the modules in the jmods directory of the modules home. The requires of a module
+ * declaration (module-info.class) are included too. Jars, and the class files within each jar, are analysed in
+ * parallel on the fork/join common pool.
+ * <p>
+ * Like jdeps --list-deps the result is just the java modules that are used directly, jlink resolves the modules those
+ * in turn require.
+ */
+class BytecodeAnalyzer {
+
+    private static final int CLASS_FILE_MAGIC = 0xCAFEBABE;
+
+    // constant pool tags
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_INTEGER = 3;
+    private static final int CONSTANT_FLOAT = 4;
+    private static final int CONSTANT_LONG = 5;
+    private static final int CONSTANT_DOUBLE = 6;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_STRING = 8;
+    private static final int CONSTANT_FIELDREF = 9;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_INTERFACE_METHODREF = 11;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+    private static final int CONSTANT_METHOD_HANDLE = 15;
+    private static final int CONSTANT_METHOD_TYPE = 16;
+    private static final int CONSTANT_DYNAMIC = 17;
+    private static final int CONSTANT_INVOKE_DYNAMIC = 18;
+    private static final int CONSTANT_MODULE = 19;
+    private static final int CONSTANT_PACKAGE = 20;
+
+    private final Map<String, String> javaModulesByPackage = new HashMap<>();
+    private final Set<String> javaModules = new HashSet<>();
+
+    /**
+     * @param modulesHome the java installation whose jmods the jars will be linked with
+     */
+    BytecodeAnalyzer(@Nonnull Path modulesHome) {
+        Jmods.descriptors(modulesHome.resolve("jmods")).forEach(descriptor -> {
+            this.javaModules.add(descriptor.name());
+            descriptor.packages().forEach(packageName -> this.javaModulesByPackage.put(packageName, descriptor.name()));
+        });
+    }
+
+    /**
+     * @param jarPaths the jars to analyse
+     * @return the java modules on which each of the jars depend
+     */
+    Map<Path, Set<String>> javaModulesOfJars(@Nonnull List<Path> jarPaths) {
+        return Parallel.map(jarPaths, this::javaModulesOfJar);
+    }
+
+    /**
+     * @param jarPath the jar to analyse
+     * @return the java modules on which the jar depends
+     */
+    Set<String> javaModulesOfJar(@Nonnull Path jarPath) {
+        try (ZipFile jarFile = new ZipFile(jarPath.toFile())) {
+            List<? extends ZipEntry> classEntries = jarFile.stream()
+                    .filter(entry -> entry.getName().endsWith(".class"))
+                    .collect(Collectors.toList());
+
+            return classEntries.parallelStream()
+                    .flatMap(entry -> this.javaModulesOfClassFile(jarPath.toString(), entry.getName(), readEntry(jarFile, entry)))
+                    .collect(Collectors.toSet());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read " + jarPath, e);
+        }
+    }
+
+    /**
+     * Analyse a jar as it is streamed e.g. a jar nested in another jar, without extracting it. The class files within
+     * the jar are analysed one after another as they are read.
+     *
+     * @param jarStream the jar to analyse, it is read to the end but not closed
+     * @param jarName the name of the jar e.g. BOOT-INF/lib/mylib.jar in myapp.jar
+     * @return the java modules on which the jar depends
+     */
+    Set<String> javaModulesOfJar(@Nonnull InputStream jarStream, @Nonnull String jarName) {
+        Set<String> javaModules = new HashSet<>();
+        // not closed since that would close the jar stream
+        ZipInputStream zipStream = new ZipInputStream(jarStream);
+        try {
+            for (ZipEntry entry = zipStream.getNextEntry(); entry != null; entry = zipStream.getNextEntry()) {
+                if (entry.getName().endsWith(".class")) {
+                    // reads to the end of the entry
+                    byte[] classFile = zipStream.readAllBytes();
+                    this.javaModulesOfClassFile(jarName, entry.getName(), classFile).forEach(javaModules::add);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read " + jarName, e);
+        }
+        return javaModules;
+    }
+
+    private Stream<String> javaModulesOfClassFile(@Nonnull String jarName, @Nonnull String entryName, @Nonnull byte[] classFile) {
+        if (entryName.endsWith("module-info.class")) {
+            return requiredModules(classFile).filter(this.javaModules::contains);
+        }
+        return referencedPackages(jarName, entryName, classFile)
+                .map(this.javaModulesByPackage::get)
+                .filter(Objects::nonNull);
+    }
+
+    private static byte[] readEntry(@Nonnull ZipFile jarFile, @Nonnull ZipEntry entry) {
+        try (InputStream inputStream = jarFile.getInputStream(entry)) {
+            return inputStream.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read " + entry.getName() + " in " + jarFile.getName(), e);
+        }
+    }
+
+    private static Stream<String> requiredModules(@Nonnull byte[] moduleInfo) {
+        try {
+            return ModuleDescriptor.read(new ByteArrayInputStream(moduleInfo)).requires().stream()
+                    .map(ModuleDescriptor.Requires::name);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return the packages of all the classes that a class file refers to
+     */
+    private static Stream<String> referencedPackages(@Nonnull String jarName, @Nonnull String entryName, @Nonnull byte[] classFile) {
+        try {
+            DataInputStream input = new DataInputStream(new ByteArrayInputStream(classFile));
+            if (input.readInt() != CLASS_FILE_MAGIC) {
+                // not actually a class file
+                return Stream.empty();
+            }
+            input.readUnsignedShort(); // minor version
+            input.readUnsignedShort(); // major version
+
+            int constantPoolCount = input.readUnsignedShort();
+            String[] utf8s = new String[constantPoolCount];
+            Set<Integer> classNames = new HashSet<>();
+            Set<Integer> descriptors = new HashSet<>();
+            for (int i = 1; i < constantPoolCount; i++) {
+                int tag = input.readUnsignedByte();
+                switch (tag) {
+                    case CONSTANT_UTF8:
+                        utf8s[i] = input.readUTF();
+                        break;
+                    case CONSTANT_CLASS:
+                        classNames.add(input.readUnsignedShort());
+                        break;
+                    case CONSTANT_NAME_AND_TYPE:
+                        input.readUnsignedShort(); // name
+                        descriptors.add(input.readUnsignedShort());
+                        break;
+                    case CONSTANT_METHOD_TYPE:
+                        descriptors.add(input.readUnsignedShort());
+                        break;
+                    case CONSTANT_STRING:
+                    case CONSTANT_MODULE:
+                    case CONSTANT_PACKAGE:
+                        input.readUnsignedShort();
+                        break;
+                    case CONSTANT_METHOD_HANDLE:
+                        input.readUnsignedByte();
+                        input.readUnsignedShort();
+                        break;
+                    case CONSTANT_INTEGER:
+                    case CONSTANT_FLOAT:
+                    case CONSTANT_FIELDREF:
+                    case CONSTANT_METHODREF:
+                    case CONSTANT_INTERFACE_METHODREF:
+                    case CONSTANT_DYNAMIC:
+                    case CONSTANT_INVOKE_DYNAMIC:
+                        input.readInt();
+                        break;
+                    case CONSTANT_LONG:
+                    case CONSTANT_DOUBLE:
+                        input.readLong();
+                        // 8 byte constants take two entries
+                        i++;
+                        break;
+                    default:
+                        throw new IOException("Unknown constant pool tag " + tag);
+                }
+            }
+
+            input.readUnsignedShort(); // access flags
+            input.readUnsignedShort(); // this class
+            input.readUnsignedShort(); // super class
+            input.skipBytes(2 * input.readUnsignedShort()); // interfaces, which are class references
+            for (int members = 0; members < 2; members++) {
+                // fields and then methods
+                int memberCount = input.readUnsignedShort();
+                for (int i = 0; i < memberCount; i++) {
+                    input.readUnsignedShort(); // access flags
+                    input.readUnsignedShort(); // name
+                    descriptors.add(input.readUnsignedShort());
+                    int attributeCount = input.readUnsignedShort();
+                    for (int j = 0; j < attributeCount; j++) {
+                        input.readUnsignedShort(); // name
+                        input.skipBytes(input.readInt());
+                    }
+                }
+            }
+
+            Set<String> typeNames = new HashSet<>();
+            classNames.forEach(index -> {
+                String className = utf8s[index];
+                if (className.startsWith("[")) {
+                    // array classes are named by their descriptor
+                    addDescriptorTypes(className, typeNames);
+                } else {
+                    typeNames.add(className);
+                }
+            });
+            descriptors.forEach(index -> addDescriptorTypes(utf8s[index], typeNames));
+
+            return typeNames.stream()
+                    .filter(typeName -> typeName.indexOf('/') > 0)
+                    .map(typeName -> typeName.substring(0, typeName.lastIndexOf('/')).replace('/', '.'))
+                    .distinct();
+        } catch (IOException | RuntimeException e) {
+            throw new RuntimeException("Failed to parse class file " + entryName + " in " + jarName, e);
+        }
+    }
+
+    private static void addDescriptorTypes(@Nonnull String descriptor, @Nonnull Set<String> typeNames) {
+        // e.g. (ILjava/lang/String;[Ljava/sql/Connection;)V
+        int i = 0;
+        while (i < descriptor.length()) {
+            if (descriptor.charAt(i) == 'L') {
+                int end = descriptor.indexOf(';', i);
+                if (end < 0) {
+                    return;
+                }
+                typeNames.add(descriptor.substring(i + 1, end));
+                i = end;
+            }
+            i++;
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package com.alkimiapps.gradle.plugin.dplink.internal;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.annotation.Nonnull;
+
+import com.alkimiapps.javatools.FileUtils;
+
+/**
+ * A directory of cache entries that may be shared by concurrently running builds.
+ * <p>
+ * Each entry is a file or directory named by its key. Entries are written under a temporary name and then atomically
+ * renamed into place, so an entry is either complete or absent. The last modified time of an entry is refreshed
+ * whenever it is used and, when the cache is trimmed, the least recently used entries are evicted until the total
+ * weight of the entries is within the configured maximum. Eviction is done while holding a lock on a lock file in the
+ * directory and evicted entries are renamed out of the way before they are deleted - so readers never see a partially
+ * deleted entry.
+ */
+class CacheDirectory {
+
+    private static final String LOCK_FILE_NAME = ".lock";
+    private static final String TEMP_PREFIX = ".tmp-";
+    private static final String EVICTED_PREFIX = ".evicted-";
+
+    // FileChannel locks are held per JVM so concurrent evictions within this JVM must also be serialised
+    private static final ConcurrentHashMap<Path, Object> jvmLocks = new ConcurrentHashMap<>();
+
+    private final Path directory;
+    private final long maxWeight;
+    private final ToLongFunction<Path> entryWeight;
+
+    /**
+     * @param directory the cache directory, created if it does not exist
+     * @param maxWeight the maximum total weight of all the entries
+     * @param entryWeight the weight of an entry e.g. 1 to bound the number of entries or its size to bound bytes
+     */
+    CacheDirectory(@Nonnull Path directory, long maxWeight, @Nonnull ToLongFunction<Path> entryWeight) {
+        this.directory = directory.toAbsolutePath().normalize();
+        this.maxWeight = maxWeight;
+        this.entryWeight = entryWeight;
+    }
+
+    /**
+     * Get the entry for the specified key and mark it as recently used.
+     *
+     * @param key the entry key
+     * @return the entry path or empty if there is no such entry
+     */
+    Optional<Path> get(@Nonnull String key) {
+        Path entry = this.directory.resolve(key);
+        try {
+            Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+            return Optional.of(entry);
+        } catch (IOException e) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Add an entry for the specified key. If some other build has added an entry for the key in the meantime then
+     * that entry is kept.
+     *
+     * @param key the entry key
+     * @param writer writes the entry content to the (temporary) path it's given
+     */
+    void put(@Nonnull String key, @Nonnull EntryWriter writer) {
+        try {
+            Files.createDirectories(this.directory);
+            Path tempEntry = this.directory.resolve(TEMP_PREFIX + UUID.randomUUID());
+            try {
+                writer.write(tempEntry);
+                Files.move(tempEntry, this.directory.resolve(key), StandardCopyOption.ATOMIC_MOVE);
+            } catch (FileAlreadyExistsException | DirectoryNotEmptyException e) {
+                // raced with another build which already cached the same content
+            } finally {
+                if (Files.exists(tempEntry)) {
+                    FileUtils.forceDelete(tempEntry.toFile());
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Evict the least recently used entries until the total weight of the entries is within the maximum.
+     */
+    void trim() {
+        if (!Files.isDirectory(this.directory)) {
+            return;
+        }
+        synchronized (jvmLocks.computeIfAbsent(this.directory, directory -> new Object())) {
+            try (FileChannel lockChannel = FileChannel.open(this.directory.resolve(LOCK_FILE_NAME),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                // excludes other builds trimming the directory, until the channel is closed
+                lockChannel.lock();
+                this.evict();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private void evict() throws IOException {
+        List<Path> entries;
+        List<Path> evictions = new ArrayList<>();
+        try (Stream<Path> paths = Files.list(this.directory)) {
+            entries = paths.filter(path -> !path.getFileName().toString().startsWith("."))
+                    .collect(Collectors.toList());
+        }
+        try (Stream<Path> paths = Files.list(this.directory)) {
+            // left behind by a build that died part way through an eviction
+            paths.filter(path -> path.getFileName().toString().startsWith(EVICTED_PREFIX)).forEach(evictions::add);
+        }
+
+        long totalWeight = 0;
+        entries.sort(Comparator.comparing(CacheDirectory::lastUsed).reversed());
+        for (Path entry : entries) {
+            totalWeight += this.entryWeight.applyAsLong(entry);
+            if (totalWeight > this.maxWeight) {
+                evictions.add(entry);
+            }
+        }
+
+        for (Path entry : evictions) {
+            Path evicted = entry.getFileName().toString().startsWith(EVICTED_PREFIX) ? entry :
+                    this.directory.resolve(EVICTED_PREFIX + UUID.randomUUID());
+            try {
+                if (evicted != entry) {
+                    Files.move(entry, evicted, StandardCopyOption.ATOMIC_MOVE);
+                }
+                FileUtils.forceDelete(evicted.toFile());
+            } catch (NoSuchFileException e) {
+                // already gone
+            }
+        }
+    }
+
+    private static long lastUsed(@Nonnull Path entry) {
+        try {
+            return Files.getLastModifiedTime(entry).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Writes the content of a new cache entry.
+     */
+    @FunctionalInterface
+    interface EntryWriter {
+        void write(@Nonnull Path entry) throws IOException;
+    }
+}
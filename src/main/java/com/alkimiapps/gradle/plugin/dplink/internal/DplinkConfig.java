@@ -2,9 +2,12 @@ package com.alkimiapps.gradle.plugin.dplink.internal;
 
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.List;
 import java.util.Optional;
 import javax.annotation.Nonnull;
 
+import com.alkimiapps.javatools.FileUtils;
 import lombok.Data;
 
 @Data
@@ -13,14 +16,73 @@ public class DplinkConfig {
     private @Nonnull Path modulesHome = Paths.get(System.getProperty("java.home"));
     private @Nonnull Path buildFolderPath = Paths.get("build");
     private @Nonnull Path buildLibsDir = buildFolderPath.resolve("libs");
+    // the jars of the app (e.g. as resolved by gradle), instead of the jars in the buildLibsDir
+    private @Nonnull List<Path> libs = Collections.emptyList();
     private @Nonnull Path outputDir = buildFolderPath.resolve("app");
+    // when there are targets they are linked instead of the modulesHome into the outputDir
+    private @Nonnull List<LinkTarget> targets = Collections.emptyList();
+    private @Nonnull List<Application> applications = Collections.emptyList();
     private @Nonnull Optional<String> executableJar = Optional.empty();
     private @Nonnull Optional<String>  mainClassName = Optional.empty();
     private @Nonnull Optional<String>  jvmArgs = Optional.empty();
     private @Nonnull Optional<String>  appArgs = Optional.empty();
     private @Nonnull String appName = "app";
+    private @Nonnull Optional<Path> sharedCacheDir = Optional.empty();
+    private long maxCacheEntries = 10000;
+    private @Nonnull Optional<Path> imageCacheDir = Optional.empty();
+    private long maxImageCacheBytes = 2048 * FileUtils.ONE_MB;
+    private int jdepsBatchSize = 1;
+    private int maxParallelTools;
+    private boolean virtualThreads;
+    private long toolTimeoutSeconds = 20 * 60;
+    private @Nonnull LinkProfile linkProfile = LinkProfile.LEGACY;
+    private @Nonnull AnalysisMode analysisMode = AnalysisMode.JDEPS;
+    private @Nonnull List<String> jlinkArgs = Collections.emptyList();
+    private @Nonnull Optional<Path> lockFile = Optional.empty();
+    private @Nonnull LockMode lockMode = LockMode.USE;
+    private @Nonnull Optional<String> trainingMainClass = Optional.empty();
+    private @Nonnull Optional<String> trainingArgs = Optional.empty();
+    private boolean appCds;
+    private boolean orderResources;
+    private boolean jliClasses;
+    private boolean linkLibs;
+    private boolean linkApp;
     private boolean allJavaModules;
     private boolean fatJar;
     private boolean verbose;
-}
 
+    /**
+     * @return the targets, or the modulesHome and outputDir if there are no targets
+     */
+    public List<LinkTarget> linkTargets() {
+        return this.targets.isEmpty() ? Collections.singletonList(new LinkTarget(this.modulesHome, this.outputDir)) : this.targets;
+    }
+
+    /**
+     * @return the applications, or the app of the mainClassName (if there is one) if there are no applications
+     */
+    public List<Application> launchedApplications() {
+        if (!this.applications.isEmpty()) {
+            return this.applications;
+        }
+        return this.mainClassName
+                .map(mainClass -> Collections.singletonList(new Application(this.appName, mainClass, this.executableJar,
+                        this.jvmArgs, this.appArgs, this.trainingMainClass, this.trainingArgs, Collections.emptyList())))
+                .orElse(Collections.emptyList());
+    }
+
+    /**
+     * @return the file the dplink report is written to
+     */
+    public Path reportFile() {
+        return reportFile(this.buildFolderPath);
+    }
+
+    /**
+     * @param buildFolderPath a build folder
+     * @return the file the dplink report is written to in the build folder
+     */
+    public static Path reportFile(@Nonnull Path buildFolderPath) {
+        return buildFolderPath.resolve("reports/dplink/dplink.json");
+    }
+}
@@ -0,0 +1,68 @@
+package com.alkimiapps.gradle.plugin.dplink.internal;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import javax.annotation.Nonnull;
+
+/**
+ * A failure of dplink, e.g. a tool that exited with an error, with the details needed to see why (e.g. the last lines
+ * written by the tool).
+ * <p>
+ * Work done in parallel (e.g. analysing jars) carries on past a failure and all the failures are then reported
+ * together, as one DplinkException with the individual failures as its suppressed exceptions. Dplink never exits the
+ * JVM, which is the gradle daemon.
+ */
+public class DplinkException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final List<String> details;
+
+    /**
+     * @param message what failed
+     * @param details why e.g. the tool output
+     */
+    DplinkException(@Nonnull String message, @Nonnull List<String> details) {
+        super(message);
+        this.details = Collections.unmodifiableList(details);
+    }
+
+    /**
+     * @param message what failed
+     * @param cause why
+     */
+    DplinkException(@Nonnull String message, @Nonnull Throwable cause) {
+        super(message, cause);
+        this.details = Collections.emptyList();
+    }
+
+    /**
+     * @return why it failed e.g. the tool output
+     */
+    public List<String> getDetails() {
+        return this.details;
+    }
+
+    @Override
+    public String getMessage() {
+        if (this.details.isEmpty()) {
+            return super.getMessage();
+        }
+        return super.getMessage() + "\n" + String.join("\n", this.details);
+    }
+
+    /**
+     * @param failures the failures of work done in parallel, there must be at least one
+     * @return the one failure, or a failure that reports all of them
+     */
+    static RuntimeException of(@Nonnull List<RuntimeException> failures) {
+        if (failures.size() == 1) {
+            return failures.get(0);
+        }
+        DplinkException dplinkException = new DplinkException(failures.size() + " failures",
+                failures.stream().map(failure -> "- " + failure.getMessage()).collect(Collectors.toList()));
+        failures.forEach(dplinkException::addSuppressed);
+        return dplinkException;
+    }
+}
@@ -1,27 +1,37 @@
 package com.alkimiapps.gradle.plugin.dplink.internal;
 
-import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.lang.module.FindException;
+import java.lang.module.ModuleDescriptor;
+import java.lang.module.ModuleFinder;
+import java.lang.module.ModuleReference;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
-import java.util.concurrent.TimeUnit;
-import java.util.function.Function;
-import java.util.stream.BaseStream;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import javax.annotation.Nonnull;
-import javax.annotation.Nullable;
 
 import com.alkimiapps.javatools.FileUtils;
+import com.alkimiapps.javatools.Hashes;
 
 import static com.alkimiapps.javatools.Sugar.fatalGuard;
 import static com.alkimiapps.javatools.Sugar.ifThen;
@@ -32,230 +42,952 @@ import static java.nio.file.Files.isDirectory;
  * Executes the commands that create a jre customised to contain only those Java modules needed for some specific
  * application.
  * <p>
- * The application is defined in terms of one or more jars within libs subdirectory of a build folder (i.e. standard
- * gradle location for storing jars required at runtime). DplinkExecutor iterates over the jars the libs subdirectory
- * and finds the java dependencies for each jar. Then using that list of dependencies, jlink is executed to create the
- * custom jre in the outputDir location (e.g. build/app).
+ * The application is defined in terms of one or more jars, either given as the libs (e.g. the jar and runtime
+ * classpath resolved by gradle) or else within libs subdirectory of a build folder (i.e. standard gradle location for
+ * storing jars required at runtime). DplinkExecutor iterates over the jars and finds the java dependencies for each
+ * jar. Then using that list of dependencies, jlink is executed to create the custom jre in the outputDir location (e.g.
+ * build/app).
  * <p>
  * Optionally the name of an executable jar and the name of a main class for an executable jar can be specified. Doing
  * so informs DplinkExecutor to create an executable script for running the app. This script is by default named "app" and is
  * created in the ${outputDir}/bin directory. If there is no executableJar but there is a mainClassName then DplinkExecutor will
- * expect that there is only a single jar in the libs subdirectory and that that jar is an executable jar. If an
- * executableJar is specified and there are multiple jars in the libs subdirectory then these jars are included in the
- * classpath of the executable.
+ * expect that there is only a single jar and that that jar is an executable jar. If an executableJar is specified and
+ * there are multiple jars then these jars are copied into the image and included in the classpath of the executable. * <p>
+ * Alternatively several applications can share the same image, each with its own script in ${outputDir}/bin and its
+ * own jars in ${outputDir}/lib/&lt;name&gt; (the libs, unless the application has libs of its own). The java modules are
+ * those on which the jars of all the applications depend.
  */
 public class DplinkExecutor {
 
+    // the app script variable holding the image directory
+    private static final String APP_HOME = "$APP_HOME";
+
+    // the AppCDS archive created by a training run, in the lib dir of the image
+    private static final String APP_CDS_ARCHIVE = "app.jsa";
+
+    // from this release the JVM can dump a dynamic AppCDS archive on top of the image's default CDS archive
+    private static final int DYNAMIC_APP_CDS_RELEASE = 13;
+
+    // from this release jlink can create the default CDS archive of an image itself
+    private static final int JLINK_CDS_RELEASE = 18;
+
+    // e.g. "mylib.jar -> java.sql", other lines are for dependencies on other jars or not found dependencies
+    private static final Pattern JDEPS_SUMMARY_PATTERN = Pattern.compile("^\\s*(\\S+) -> ((java|jdk|javafx|oracle)\\.\\S+)\\s*$");
+
     private boolean isVerbose;
     private Path javaHome;
     private Path modulesHome;
     private boolean allJavaModules;
+    private int jdepsBatchSize;
+    private AnalysisMode analysisMode;
+    private LinkProfile linkProfile;
+    private List<String> jlinkArgs;
+    private boolean isAppImage;
+    private List<Application> applications;
+    private boolean isMultiApp;
+    private boolean isAppCds;
+    private boolean isOrderResources;
+    private boolean isJliClasses;
+    private ToolRunner toolRunner;
+    private ToolScheduler toolScheduler;
+    private JdepsCache jdepsCache;
+    private Optional<ImageCache> imageCache;
+    private DplinkReport report;
+    private AnalysisService analysisService;
+    private List<Path> libPaths;
+    private List<Path> defaultLibPaths;
+    private Optional<AppModules> appModules;
+
+    // the images linked by this executor by output dir, so that a later dplink by the same executor (e.g. one watching
+    // the libs) can update an image in place when only the app's jars have changed
+    private final Map<Path, LinkedImage> linkedImages = new ConcurrentHashMap<>();
 
     public void dplink(@Nonnull DplinkConfig dplinkConfig) {
 
         this.isVerbose = dplinkConfig.isVerbose();
         this.javaHome = dplinkConfig.getJavaHome();
-        this.modulesHome = dplinkConfig.getModulesHome();
+        // the jars are analysed against the (first) target's java modules, which are the same for all the targets
+        this.modulesHome = dplinkConfig.linkTargets().get(0).getModulesHome();
         this.allJavaModules = dplinkConfig.isAllJavaModules();
-
-        Optional<Stream<Path>> fileListStream = Optional.empty();
+        this.jdepsBatchSize = dplinkConfig.getJdepsBatchSize();
+        this.analysisMode = dplinkConfig.getAnalysisMode();
+        this.linkProfile = dplinkConfig.getLinkProfile();
+        this.jlinkArgs = dplinkConfig.getJlinkArgs();
+        this.applications = dplinkConfig.launchedApplications();
+        this.isMultiApp = !dplinkConfig.getApplications().isEmpty();
+        this.isAppImage = !this.applications.isEmpty();
+        this.isAppCds = this.isAppImage && dplinkConfig.isAppCds();
+        this.isOrderResources = this.isAppImage && dplinkConfig.isOrderResources();
+        // classes listed by the jlinkArgs are left as they are
+        this.isJliClasses = this.isAppImage && dplinkConfig.isJliClasses() && this.jlinkArgs.stream()
+                .noneMatch(jlinkArg -> jlinkArg.startsWith("--generate-jli-classes"));
+        this.analysisService = AnalysisService.get();
+        this.toolRunner = new ToolRunner(this.javaHome, this.isVerbose, dplinkConfig.getToolTimeoutSeconds(),
+                this.analysisService.toolPermits(ToolScheduler.parallelism(dplinkConfig.getMaxParallelTools())));
+        this.toolScheduler = new ToolScheduler(dplinkConfig.getMaxParallelTools(), dplinkConfig.isVirtualThreads());
+        // bytecode analysis results depend on the package tables of the modules home rather than on jdeps
+        this.jdepsCache = this.analysisMode == AnalysisMode.BYTECODE ?
+                this.analysisCache("bytecode-", this.modulesHome, dplinkConfig) :
+                this.analysisCache("", this.javaHome, dplinkConfig);
+        this.imageCache = dplinkConfig.getImageCacheDir().map(dir -> new ImageCache(dir, dplinkConfig.getMaxImageCacheBytes()));
+        ifThen(this.isVerbose && this.imageCache.isPresent(), () -> Stream.concat(Stream.of(this.javaHome),
+                dplinkConfig.linkTargets().stream().map(LinkTarget::getModulesHome))
+                .distinct()
+                .filter(jdkHome -> !JdkRelease.build(jdkHome).isPresent())
+                .forEach(jdkHome -> System.out.println("Dplink: no release file in " + jdkHome +
+                        ", its images aren't cached")));
+        this.report = new DplinkReport();
 
         try {
 
-            Files.createDirectories(dplinkConfig.getBuildLibsDir());
-
-            fatalGuard(exists(dplinkConfig.getBuildLibsDir()), "No libs dir at: " + dplinkConfig.getBuildLibsDir().getParent().toString());
-            fatalGuard(isDirectory(dplinkConfig.getBuildLibsDir()), "libs is not a directory: " + dplinkConfig.getBuildLibsDir().getParent().toString());
+            this.libPaths = this.report.time("listLibs", () -> this.libPaths(dplinkConfig));
 
             Set<String> dependentJavaModules = new HashSet<>();
 
             if(allJavaModules) {
+                // nothing is analysed so there is nothing to lock, and nothing for a lock to differ from
+                fatalGuard(dplinkConfig.getLockMode() != LockMode.WRITE, "There is nothing to lock with allJavaModules");
                 allJavaModules().forEach(dependentJavaModules::add);
             }else{
-            if( dplinkConfig.isFatJar() && dplinkConfig.getExecutableJar().isPresent() ) {
-                fileListStream = Optional.of( Stream.of( Paths.get(dplinkConfig.getExecutableJar().get()) ) );
-            } else                {
-                fileListStream = Optional.of( Files.list( dplinkConfig.getBuildLibsDir() ).parallel() );
+            List<Path> jarPaths = this.libPaths;
+            if (dplinkConfig.isFatJar() && this.isMultiApp) {
+                jarPaths = this.applications.stream()
+                        .map(application -> libPath(this.appLibPaths(application), this.executableJarName(application)))
+                        .distinct()
+                        .collect(Collectors.toList());
+            } else if( dplinkConfig.isFatJar() && dplinkConfig.getExecutableJar().isPresent() ) {
+                jarPaths = Collections.singletonList(libPath(this.libPaths, jarName(dplinkConfig.getExecutableJar().get())));
+            }
+            List<Path> nestedFatJars = dplinkConfig.isFatJar() ?
+                    jarPaths.stream().filter(FatJarAnalyzer::hasNestedJars).collect(Collectors.toList()) :
+                    Collections.emptyList();
+
+            // how the java modules are found, a lock is only good for the same analysis
+            String bytecodeAnalyser = "bytecode " + JdkRelease.feature(JdkRelease.of(this.modulesHome));
+            String lockAnalyser = nestedFatJars.size() == jarPaths.size() || this.analysisMode == AnalysisMode.BYTECODE ?
+                    bytecodeAnalyser : "jdeps " + JdkRelease.feature(JdkRelease.of(this.javaHome)) +
+                    (nestedFatJars.isEmpty() ? "" : ", " + bytecodeAnalyser + " for fat jars");
+            Optional<Set<String>> lockedJavaModules = this.lockedJavaModules(jarPaths, lockAnalyser, dplinkConfig);
+            if (lockedJavaModules.isPresent()) {
+                dependentJavaModules.addAll(lockedJavaModules.get());
+            } else {
+                Map<Path, Set<String>> jarJavaModules = new HashMap<>();
+                if (!nestedFatJars.isEmpty()) {
+                    // jdeps doesn't look inside nested jars
+                    ifThen(this.isVerbose, () -> System.out.println("Dplink: analysing the jars nested in " + nestedFatJars.size() + " fat jars"));
+                    FatJarAnalyzer fatJarAnalyzer = new FatJarAnalyzer(this.analysisService.bytecodeAnalyzer(this.modulesHome),
+                            this.analysisCache("bytecode-", this.modulesHome, dplinkConfig), this.report);
+                    nestedFatJars.forEach(fatJar -> jarJavaModules.put(fatJar, fatJarAnalyzer.javaModulesOfJar(fatJar)));
+                }
+                jarJavaModules.putAll(this.dependentJavaModulesOfJars(jarPaths.stream()
+                        .filter(jarPath -> !nestedFatJars.contains(jarPath))
+                        .collect(Collectors.toList())));
+                jarJavaModules.values().forEach(dependentJavaModules::addAll);
+
+                this.jdepsCache.trim();
+
+                if (dplinkConfig.getLockMode() == LockMode.WRITE) {
+                    Path lockFile = this.lockFile(dplinkConfig);
+                    new DplinkLock(lockAnalyser, Parallel.map(jarPaths, this.analysisService::jarHash), jarJavaModules,
+                            dependentJavaModules).write(lockFile);
+                    System.out.println("Dplink: " + dependentJavaModules.size() + " java modules of " + jarPaths.size() +
+                            " jars locked in " + lockFile);
+                    return;
+                }
             }
-
-            fileListStream.get()
-                    .flatMap(this::dependentJavaModulesOfJar)
-                    .forEach(dependentJavaModules::add);
             }
 
+            this.appModules = Optional.empty();
+            if (dplinkConfig.isLinkApp()) {
+                fatalGuard(!dplinkConfig.isFatJar(), "linkApp can't be used with fatJar, the jars nested in a fat jar can't be modules");
+                AppModules appModules = new AppModules(this.toolRunner, this.toolScheduler,
+                        dplinkConfig.getBuildFolderPath().resolve("dplink/app-modules"));
+                this.report.time("appModules", () -> appModules.create(this.libPaths, JdkRelease.of(this.javaHome)));
+                this.appModules = Optional.of(appModules);
+            }
 
             if (dependentJavaModules.size() > 0) {
-                this.jlink(dependentJavaModules, dplinkConfig.getOutputDir());
-                if (dplinkConfig.getMainClassName().isPresent()) {
-                    this.createApp(dplinkConfig);
-                }
+                // the same java modules are linked for every target, concurrently
+                this.toolScheduler.map(dplinkConfig.linkTargets(), linkTarget -> {
+                    this.linkTarget(dependentJavaModules, linkTarget, dplinkConfig);
+                    return linkTarget;
+                });
             }
 
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+            Path reportFile = dplinkConfig.reportFile();
+            this.report.write(reportFile);
+            ifThen(this.isVerbose, () -> System.out.println("Dplink: report written to " + reportFile));
+
         } finally {
-            fileListStream.ifPresent(BaseStream::close);
+            this.toolScheduler.close();
         }
     }
 
+    /**
+     * @param analyser what analyses the jars e.g. "bytecode-", or "" for jdeps
+     * @param jdkHome the JDK installation whose build the analyses depend on
+     * @return the cache of the analyses, keyed by the release and build of the JDK e.g. 17.0.9-4f1c2d3e4b5a
+     */
+    private JdepsCache analysisCache(@Nonnull String analyser, @Nonnull Path jdkHome, @Nonnull DplinkConfig dplinkConfig) {
+        // the JDK build isn't fit for a file name, the release is kept readable
+        String analyserRelease = analyser + JdkRelease.of(jdkHome) + "-" +
+                Hashes.sha256(jdkBuild(jdkHome)).substring(0, 12);
+        // other builds sharing the cache may have other JDKs that can't be told apart from one without a release file
+        Optional<Path> sharedCacheDir = dplinkConfig.getSharedCacheDir()
+                .filter(dir -> JdkRelease.build(jdkHome).isPresent())
+                .map(dir -> dir.resolve("jdeps"));
+        return new JdepsCache(analyserRelease, dplinkConfig.getBuildFolderPath().resolve("dplink/jdeps-cache"),
+                sharedCacheDir, dplinkConfig.getMaxCacheEntries(), Optional.of(this.analysisService));
+    }
+
     private Stream<String> allJavaModules() {
-        String[] javaCommand = {this.javaHome.resolve("bin/java").toString(), "--list-modules", "--module-path", this.modulesHome.resolve( "jmods" ).toString()};
+        Path jmodsDir = this.modulesHome.resolve("jmods");
 
-        Function<InputStream, Stream<String>> commandOutputProcessing = (InputStream jdepsInputStream) -> {
-            BufferedReader jdepsReader = new BufferedReader(new InputStreamReader(jdepsInputStream));
-            return jdepsReader.lines()
-                    .map(String::trim)
-                      .map(s -> s.replaceFirst( "@.*$", "" ))
+        if (this.toolRunner.isInProcess()) {
+            // the in-process equivalent of java --list-modules --module-path jmods
+            return Stream.concat(ModuleFinder.ofSystem().findAll().stream(), ModuleFinder.of(jmodsDir).findAll().stream())
+                    .map(moduleReference -> moduleReference.descriptor().name())
                     .collect(Collectors.toSet())
                     .parallelStream();
-        };
+        }
+
+        String[] javaCommand = {this.javaHome.resolve("bin/java").toString(), "--list-modules", "--module-path", jmodsDir.toString()};
 
-        return this.execCommand(javaCommand, commandOutputProcessing).orElse(Stream.of());
+        Set<String> javaModules = new HashSet<>();
+        Consumer<String> commandOutputProcessing = (String javaOutputLine) ->
+                javaModules.add(javaOutputLine.trim().replaceFirst( "@.*$", "" ));
+
+        this.toolRunner.exec(javaCommand, commandOutputProcessing);
+        return javaModules.parallelStream();
 
     }
 
-    private Stream<String> dependentJavaModulesOfJar(@Nonnull Path jarPath) {
-        String[] jdepsCommand = {this.javaHome.resolve("bin/jdeps").toString(), "--list-deps", jarPath.toString()};
+    private Optional<Set<String>> lockedJavaModules(@Nonnull List<Path> jarPaths, @Nonnull String lockAnalyser,
+                                                    @Nonnull DplinkConfig dplinkConfig) {
+        if (dplinkConfig.getLockMode() == LockMode.WRITE || !dplinkConfig.getLockFile().isPresent()) {
+            return Optional.empty();
+        }
+        Path lockFile = dplinkConfig.getLockFile().get();
+        if (!exists(lockFile)) {
+            fatalGuard(dplinkConfig.getLockMode() != LockMode.VERIFY, "There is no " + lockFile + ", run gradle dplinkLock to write it");
+            return Optional.empty();
+        }
 
-        Function<InputStream, Stream<String>> commandOutputProcessing = (InputStream jdepsInputStream) -> {
-            BufferedReader jdepsReader = new BufferedReader(new InputStreamReader(jdepsInputStream));
-            return jdepsReader.lines()
-                    .filter(s -> s.matches("^\\s*(java|jdk|javafx|oracle)\\..*$"))
-                    .map(String::trim)
-                    .map(s -> s.replaceFirst( "/.*$", "" ))
-                    .collect(Collectors.toSet())
-                    .parallelStream();
+        DplinkLock lock = DplinkLock.read(lockFile);
+        Map<Path, String> jarHashes = this.report.time("hashLibs", () -> Parallel.map(jarPaths, this.analysisService::jarHash));
+        List<String> differences = lock.differences(lockAnalyser, jarHashes);
+        if (differences.isEmpty()) {
+            ifThen(this.isVerbose, () -> System.out.println("Dplink: java modules locked in " + lockFile));
+            return Optional.of(lock.javaModules());
+        }
+        if (dplinkConfig.getLockMode() == LockMode.VERIFY) {
+            throw new DplinkException(lockFile + " is out of date, run gradle dplinkLock to update it", differences);
+        }
+        System.out.println("Dplink: " + lockFile + " is out of date, analysing the jars instead (run gradle dplinkLock to update it)");
+        ifThen(this.isVerbose, () -> differences.forEach(difference -> System.out.println("Dplink:   " + difference)));
+        return Optional.empty();
+    }
+
+    private Path lockFile(@Nonnull DplinkConfig dplinkConfig) {
+        fatalGuard(dplinkConfig.getLockFile().isPresent(), "No lockFile to write");
+        return dplinkConfig.getLockFile().get();
+    }
+
+    private Map<Path, Set<String>> dependentJavaModulesOfJars(@Nonnull List<Path> jarPaths) {
+        Map<Path, String> jarHashes = this.report.time("hashLibs", () -> Parallel.map(jarPaths, this.analysisService::jarHash));
+
+        Map<Path, Set<String>> javaModulesOfJars = new HashMap<>();
+        List<Path> uncachedJarPaths = new ArrayList<>();
+        this.report.time("cacheLookup", () -> {
+            for (Path jarPath : jarPaths) {
+                // verifying means analysing every jar
+                Optional<Set<String>> cachedJavaModules = this.analysisMode == AnalysisMode.VERIFY ?
+                        Optional.empty() : this.jdepsCache.get(jarHashes.get(jarPath));
+                if (cachedJavaModules.isPresent()) {
+                    javaModulesOfJars.put(jarPath, cachedJavaModules.get());
+                } else {
+                    uncachedJarPaths.add(jarPath);
+                }
+            }
+        });
+
+        Map<Path, Set<String>> analysedJavaModules = this.analyseJavaModulesOfJars(uncachedJarPaths, jarPaths);
+        this.report.time("moduleUnion", () -> analysedJavaModules.entrySet()
+                .forEach(jarJavaModules -> {
+                    this.jdepsCache.put(jarHashes.get(jarJavaModules.getKey()), jarJavaModules.getValue());
+                    javaModulesOfJars.put(jarJavaModules.getKey(), jarJavaModules.getValue());
+                }));
+
+        return javaModulesOfJars;
+    }
+
+    private Map<Path, Set<String>> analyseJavaModulesOfJars(@Nonnull List<Path> jarPaths, @Nonnull List<Path> classpathJars) {
+        if (jarPaths.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        if (this.analysisMode == AnalysisMode.BYTECODE) {
+            return this.report.time("bytecodeAnalysis", () -> this.analysisService.bytecodeAnalyzer(this.modulesHome).javaModulesOfJars(jarPaths));
+        }
+
+        Map<Path, Set<String>> jdepsJavaModules = new HashMap<>();
+        this.toolScheduler.map(this.jdepsBatches(jarPaths), jarBatch -> this.jdepsJavaModulesOfJars(jarBatch, classpathJars))
+                .forEach(jdepsJavaModules::putAll);
+
+        if (this.analysisMode == AnalysisMode.VERIFY) {
+            this.verifyBytecodeAnalysis(this.report.time("bytecodeAnalysis", () ->
+                    this.analysisService.bytecodeAnalyzer(this.modulesHome).javaModulesOfJars(jarPaths)), jdepsJavaModules);
+        }
+        return jdepsJavaModules;
+    }
+
+    private void verifyBytecodeAnalysis(@Nonnull Map<Path, Set<String>> bytecodeJavaModules,
+                                        @Nonnull Map<Path, Set<String>> jdepsJavaModules) {
+        long conformingJars = jdepsJavaModules.entrySet().stream()
+                .filter(jarJavaModules -> {
+                    Set<String> bytecodeModules = bytecodeJavaModules.get(jarJavaModules.getKey());
+                    if (bytecodeModules.equals(jarJavaModules.getValue())) {
+                        return true;
+                    }
+                    Set<String> missing = new TreeSet<>(jarJavaModules.getValue());
+                    missing.removeAll(bytecodeModules);
+                    Set<String> extra = new TreeSet<>(bytecodeModules);
+                    extra.removeAll(jarJavaModules.getValue());
+                    System.out.println("Dplink: bytecode analysis of " + jarJavaModules.getKey().getFileName() +
+                            " differs from jdeps, missing: " + missing + " extra: " + extra);
+                    return false;
+                })
+                .count();
+        System.out.println("Dplink: bytecode analysis conforms to jdeps for " + conformingJars + " of " +
+                jdepsJavaModules.size() + " jars");
+    }
+
+    /**
+     * @return the jars in batches of at most the jdepsBatchSize, where no two jars in a batch have the same archive name
+     * (e.g. the same-named libs of different applications), since jdeps labels its summary output by archive name
+     */
+    private List<List<Path>> jdepsBatches(@Nonnull List<Path> jarPaths) {
+        int batchSize = this.jdepsBatchSize > 0 ? this.jdepsBatchSize : Math.max(jarPaths.size(), 1);
+        if (batchSize == 1) {
+            return jarPaths.stream().map(Collections::singletonList).collect(Collectors.toList());
+        }
+        List<List<Path>> jdepsBatches = new ArrayList<>();
+        List<Set<String>> batchArchiveNames = new ArrayList<>();
+        for (Path jarPath : jarPaths) {
+            Set<String> archiveNames = archiveNames(jarPath);
+            int batch = 0;
+            while (batch < jdepsBatches.size() && (jdepsBatches.get(batch).size() == batchSize ||
+                    !Collections.disjoint(batchArchiveNames.get(batch), archiveNames))) {
+                batch++;
+            }
+            if (batch == jdepsBatches.size()) {
+                jdepsBatches.add(new ArrayList<>());
+                batchArchiveNames.add(new HashSet<>());
+            }
+            jdepsBatches.get(batch).add(jarPath);
+            batchArchiveNames.get(batch).addAll(archiveNames);
+        }
+        return jdepsBatches;
+    }
+
+    /**
+     * @return the names jdeps labels the jar's summary output with, its file name and, if it's a modular jar, its
+     * module name
+     */
+    private static Set<String> archiveNames(@Nonnull Path jarPath) {
+        Set<String> archiveNames = new HashSet<>();
+        archiveNames.add(jarPath.getFileName().toString());
+        explicitModuleName(jarPath).ifPresent(archiveNames::add);
+        return archiveNames;
+    }
+
+    private Map<Path, Set<String>> jdepsJavaModulesOfJars(@Nonnull List<Path> jarBatch, @Nonnull List<Path> classpathJars) {
+        if (this.jdepsBatchSize == 1) {
+            return Collections.singletonMap(jarBatch.get(0), this.jdepsJavaModulesOfJar(jarBatch.get(0)));
+        }
+
+        // jdeps labels its summary output with the jar file name, or the module name in the case of a modular jar
+        Map<String, Path> jarsByArchiveName = new HashMap<>();
+        Map<Path, Set<String>> jarJavaModules = new HashMap<>();
+        for (Path jarPath : jarBatch) {
+            archiveNames(jarPath).forEach(archiveName -> jarsByArchiveName.put(archiveName, jarPath));
+            jarJavaModules.put(jarPath, new HashSet<>());
+        }
+
+        List<String> jdepsArgs = new ArrayList<>(Arrays.asList("-summary", "--class-path",
+                classpathJars.stream().map(Path::toString).collect(Collectors.joining(File.pathSeparator))));
+        jarBatch.forEach(jarPath -> jdepsArgs.add(jarPath.toString()));
+
+        Consumer<String> commandOutputProcessing = (String jdepsOutputLine) -> {
+            Matcher summaryMatcher = JDEPS_SUMMARY_PATTERN.matcher(jdepsOutputLine);
+            if (summaryMatcher.matches() && jarsByArchiveName.containsKey(summaryMatcher.group(1))) {
+                jarJavaModules.get(jarsByArchiveName.get(summaryMatcher.group(1))).add(summaryMatcher.group(2));
+            }
         };
 
-        return this.execCommand(jdepsCommand, commandOutputProcessing).orElse(Stream.of());
+        return this.report.timeJdeps(jarBatch, () -> {
+            this.toolRunner.run("jdeps", jdepsArgs, commandOutputProcessing);
+            return jarJavaModules;
+        });
+    }
+
+    private Set<String> jdepsJavaModulesOfJar(@Nonnull Path jarPath) {
+        List<String> jdepsArgs = Arrays.asList("--list-deps", jarPath.toString());
+
+        Set<String> javaModules = new HashSet<>();
+        Consumer<String> commandOutputProcessing = (String jdepsOutputLine) ->
+                listDepsJavaModule(jdepsOutputLine).ifPresent(javaModules::add);
+
+        return this.report.timeJdeps(Collections.singletonList(jarPath), () -> {
+            this.toolRunner.run("jdeps", jdepsArgs, commandOutputProcessing);
+            return javaModules;
+        });
 
     }
 
-    private void jlink(@Nonnull Set<String> dependentJavaModules, @Nonnull Path outputDir) {
-        String dependentJavaModulesString = dependentJavaModules.stream()
-                .collect(Collectors.joining(","));
+    /**
+     * @param jdepsOutputLine a line of jdeps --list-deps output e.g. "java.base/sun.security.util"
+     * @return the java module in the line, if there is one
+     */
+    static Optional<String> listDepsJavaModule(@Nonnull String jdepsOutputLine) {
+        if (jdepsOutputLine.matches("^\\s*(java|jdk|javafx|oracle)\\..*$")) {
+            return Optional.of(jdepsOutputLine.trim().replaceFirst( "/.*$", "" ));
+        }
+        return Optional.empty();
+    }
+
+    private static Optional<String> explicitModuleName(@Nonnull Path jarPath) {
+        try {
+            return ModuleFinder.of(jarPath).findAll().stream()
+                    .map(ModuleReference::descriptor)
+                    .filter(moduleDescriptor -> !moduleDescriptor.isAutomatic())
+                    .map(ModuleDescriptor::name)
+                    .findFirst();
+        } catch (FindException e) {
+            return Optional.empty();
+        }
+    }
+
+    private void linkTarget(@Nonnull Set<String> dependentJavaModules, @Nonnull LinkTarget linkTarget,
+                            @Nonnull DplinkConfig dplinkConfig) {
+        // an AppCDS archive, the resource order and the app's java.lang.invoke classes are found by running the image so
+        // only for images that can run on this machine
+        boolean isRunnable = JdkRelease.platform(linkTarget.getModulesHome()).equals(JdkRelease.platform(this.javaHome));
+        boolean isAppCdsTarget = this.isAppCds && isRunnable;
+        boolean isOrderResourcesTarget = this.isOrderResources && isRunnable;
+        boolean isJliClassesTarget = this.isJliClasses && isRunnable;
+        ifThen(this.isAppCds && !isAppCdsTarget, () -> System.out.println("Dplink: no AppCDS archive for " +
+                linkTarget.getOutputDir() + ", the image is for " + JdkRelease.platform(linkTarget.getModulesHome())));
+        ifThen(this.isOrderResources && !isOrderResourcesTarget, () -> System.out.println("Dplink: no resource order for " +
+                linkTarget.getOutputDir() + ", the image is for " + JdkRelease.platform(linkTarget.getModulesHome())));
+        ifThen(this.isJliClasses && !isJliClassesTarget, () -> System.out.println("Dplink: no app java.lang.invoke classes for " +
+                linkTarget.getOutputDir() + ", the image is for " + JdkRelease.platform(linkTarget.getModulesHome())));
+
+        String addModules = this.addModules(dependentJavaModules);
+        List<String> jlinkOptions = this.jlinkOptions(isAppCdsTarget);
+        String imageKey = this.imageKey(addModules, jlinkOptions, linkTarget.getModulesHome());
+        List<String> jarNames = this.appJarNames();
+        LinkedImage linkedImage = this.linkedImages.get(linkTarget.getOutputDir());
+        boolean isRelinked = false;
+        if (linkedImage != null && linkedImage.imageKey.equals(imageKey) && exists(linkTarget.getOutputDir())) {
+            // the image this executor linked before has the same java modules, only the app's jars have changed
+            ifThen(this.isVerbose, () -> System.out.println("Dplink: java modules unchanged, updating the app in " +
+                    linkTarget.getOutputDir()));
+            this.report.time("appUpdate", () -> this.updateApp(dplinkConfig, linkTarget.getOutputDir(), isAppCdsTarget,
+                    linkedImage.jarNames, jarNames));
+        } else {
+            // the image is built alongside the output dir and only replaces it once complete
+            try (StagedDirectory stagedImage = new StagedDirectory(linkTarget.getOutputDir())) {
+                if (isOrderResourcesTarget || isJliClassesTarget) {
+                    isRelinked = this.linkTracedImage(dplinkConfig, addModules, jlinkOptions, imageKey, linkTarget,
+                            stagedImage.path(), isAppCdsTarget, isOrderResourcesTarget, isJliClassesTarget);
+                } else {
+                    isRelinked = this.jlink(addModules, jlinkOptions, imageKey, linkTarget.getModulesHome(),
+                            stagedImage.path(), true);
+                    this.createApps(dplinkConfig, stagedImage.path(), isAppCdsTarget);
+                }
+                stagedImage.commit();
+            }
+        }
+        this.linkedImages.put(linkTarget.getOutputDir(), new LinkedImage(imageKey, jarNames));
+
+        if (isAppCdsTarget) {
+            // the archive records the paths of the app's jars so it's created from the image where it will be run
+            this.report.time("appCds", () -> {
+                try {
+                    for (Application application : this.applications) {
+                        this.createAppCdsArchive(application, linkTarget.getOutputDir());
+                    }
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+        }
+
+        this.report.addImage(linkTarget.getOutputDir(), linkTarget.getModulesHome(), jarNames, isRelinked);
+    }
+
+    /**
+     * Link the image by what the apps do as they start up: with the classes they load first in lib/modules, in the
+     * order they are loaded, and/or with the java.lang.invoke classes they resolve generated into the image.
+     * <p>
+     * The start up trace is that of an earlier link of the same image (in the build directory or the image cache) if
+     * there is one. Otherwise the image is linked as is, the apps are run from it to trace their start up and the image
+     * is then linked again by the trace. The image linked as is isn't cached, since later links will find the trace and
+     * link the traced image directly.
+     *
+     * @return true if jlink linked the traced image, false if it was restored from the image cache
+     */
+    private boolean linkTracedImage(@Nonnull DplinkConfig dplinkConfig, @Nonnull String addModules,
+                                 @Nonnull List<String> jlinkOptions, @Nonnull String imageKey,
+                                 @Nonnull LinkTarget linkTarget, @Nonnull Path imageDir, boolean isAppCdsTarget,
+                                 boolean isOrderResourcesTarget, boolean isJliClassesTarget) {
+        String imageName = linkTarget.getOutputDir().getFileName().toString();
+        Path traceDir = dplinkConfig.getBuildFolderPath().resolve("dplink/startup-trace").resolve(imageName);
+        try {
+            Optional<StartupTrace> startupTrace = StartupTrace.read(traceDir, imageKey);
+            Optional<ImageCache> imageCache = this.imageCache(linkTarget.getModulesHome());
+            if (!startupTrace.isPresent() && imageCache.isPresent()) {
+                Optional<Path> cachedTraceDir = imageCache.get().startupTrace(imageKey);
+                if (cachedTraceDir.isPresent()) {
+                    Files.createDirectories(traceDir);
+                    for (String fileName : StartupTrace.FILE_NAMES) {
+                        Files.copy(cachedTraceDir.get().resolve(fileName), traceDir.resolve(fileName),
+                                StandardCopyOption.REPLACE_EXISTING);
+                    }
+                    startupTrace = StartupTrace.read(traceDir, imageKey);
+                }
+            }
+
+            if (startupTrace.isPresent()) {
+                ifThen(this.isVerbose, () -> System.out.println("Dplink: linking by the start up trace in " + traceDir));
+            } else {
+                this.jlink(addModules, jlinkOptions, imageKey, linkTarget.getModulesHome(), imageDir, false);
+                this.createApps(dplinkConfig, imageDir, isAppCdsTarget);
+                StartupTrace newStartupTrace = this.report.time("startupTrace", () ->
+                        this.traceStartup(traceDir, imageDir));
+                fatalGuard(!newStartupTrace.classes().isEmpty(), "The training run loaded no classes from the image's modules");
+                newStartupTrace.write(traceDir, imageKey);
+                imageCache.ifPresent(cache -> cache.storeStartupTrace(imageKey, traceDir));
+                FileUtils.forceDelete(imageDir.toFile());
+                startupTrace = Optional.of(newStartupTrace);
+                ifThen(this.isVerbose, () -> System.out.println("Dplink: traced " + newStartupTrace.classes().size() +
+                        " classes loaded and " + newStartupTrace.jliResolutions().size() +
+                        " java.lang.invoke resolutions at start up to " + traceDir));
+            }
 
+            List<String> tracedJlinkOptions = new ArrayList<>(jlinkOptions);
+            // the same modules linked differently, by what was traced rather than where the trace is
+            StringBuilder traced = new StringBuilder(imageKey);
+            if (isOrderResourcesTarget) {
+                tracedJlinkOptions.add("--order-resources=@" + traceDir.resolve(StartupTrace.CLASS_LIST_FILE_NAME));
+                traced.append("\n--order-resources\n").append(String.join("\n", startupTrace.get().classes()));
+            }
+            // the traced resolutions replace jlink's builtin list, so only when there are some
+            if (isJliClassesTarget && !startupTrace.get().jliResolutions().isEmpty()) {
+                tracedJlinkOptions.add("--generate-jli-classes=@" + traceDir.resolve(StartupTrace.JLI_CLASSES_FILE_NAME));
+                traced.append("\n--generate-jli-classes\n").append(String.join("\n", startupTrace.get().jliResolutions()));
+            }
+            String tracedImageKey = Hashes.sha256(traced.toString());
+            boolean isLinked = this.jlink(addModules, tracedJlinkOptions, tracedImageKey, linkTarget.getModulesHome(),
+                    imageDir, true);
+            this.createApps(dplinkConfig, imageDir, isAppCdsTarget);
+            return isLinked;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Run the apps from the image to trace the classes they load from the image's modules and the java.lang.invoke
+     * forms and species they resolve.
+     */
+    private StartupTrace traceStartup(@Nonnull Path traceDir, @Nonnull Path imageDir) {
+        StartupTrace startupTrace = new StartupTrace();
         try {
-            if (Files.exists(outputDir)) {
-                FileUtils.forceDelete(outputDir.toFile());
+            Files.createDirectories(traceDir);
+            for (Application application : this.applications) {
+                Path traceFile = traceDir.resolve(application.getName() + "-class-load.log");
+                Files.deleteIfExists(traceFile);
+                // classes loaded from the CDS archive aren't traced by module, so without it
+                this.trainingRun(application, imageDir).run(Arrays.asList("-Xshare:off",
+                        "-Xlog:class+load=info:file=" + traceFile + ":none",
+                        "-Djava.lang.invoke.MethodHandle.TRACE_RESOLVE=true"), startupTrace::addOutputLine);
+                startupTrace.addClassLoads(traceFile);
             }
         } catch (IOException e) {
-            throw new RuntimeException(e);
+            throw new UncheckedIOException(e);
+        }
+        return startupTrace;
+    }
+
+    private String addModules(@Nonnull Set<String> dependentJavaModules) {
+        String dependentJavaModulesString = dependentJavaModules.stream()
+                .sorted()
+                .collect(Collectors.joining(","));
+        // the app's own modules are linked into the image too
+        return Stream.concat(Stream.of(dependentJavaModulesString),
+                this.appModules.map(appModules -> appModules.moduleNames().stream()).orElse(Stream.empty()))
+                .collect(Collectors.joining(","));
+    }
+
+    private List<String> jlinkOptions(boolean isAppCdsTarget) {
+        List<String> jlinkOptions = new ArrayList<>(this.linkProfile.jlinkOptions(this.isAppImage));
+        jlinkOptions.addAll(this.jlinkArgs);
+        if (isAppCdsTarget && JdkRelease.feature(JdkRelease.of(this.javaHome)) >= JLINK_CDS_RELEASE) {
+            // the base archive that a dynamic archive is layered on
+            jlinkOptions.add("--generate-cds-archive");
         }
+        // jlink refuses signed modular jars, the signatures aren't checked in an image anyway
+        ifThen(this.appModules.isPresent(), () -> jlinkOptions.add("--ignore-signing-information"));
+        return jlinkOptions;
+    }
 
-        String[] jlinkCommand = {
-                this.javaHome.resolve("bin/jlink").toString(),
+    /**
+     * @return the hash of everything that determines the content of the image, other than the jars copied into it
+     */
+    private String imageKey(@Nonnull String addModules, @Nonnull List<String> jlinkOptions, @Nonnull Path modulesHome) {
+        List<String> imageKeyParts = new ArrayList<>(Arrays.asList(addModules, String.join(" ", jlinkOptions),
+                jdkBuild(modulesHome), JdkRelease.platform(modulesHome), jdkBuild(this.javaHome)));
+        ifThen(this.appModules.isPresent(), () -> imageKeyParts.add(
+                this.libPaths.stream().map(this.analysisService::jarHash).collect(Collectors.joining(","))));
+        return Hashes.sha256(String.join("\n", imageKeyParts));
+    }
+
+    /**
+     * @return the build of the JDK installation, or its path if it has no release file to tell the build by
+     */
+    private static String jdkBuild(@Nonnull Path jdkHome) {
+        return JdkRelease.build(jdkHome).orElse(jdkHome.toAbsolutePath().toString());
+    }
+
+    /**
+     * @return the image cache, unless there is none or the images linked from the modules home can't be told apart
+     * from those of other JDKs in it, since an image cache is shared by all the builds on the machine
+     */
+    private Optional<ImageCache> imageCache(@Nonnull Path modulesHome) {
+        return this.imageCache.filter(imageCache ->
+                JdkRelease.build(modulesHome).isPresent() && JdkRelease.build(this.javaHome).isPresent());
+    }
+
+    /**
+     * @param isCached true if the image is to be added to the image cache (if any), otherwise it's only restored from it
+     * @return true if jlink linked the image, false if it was restored from the image cache
+     */
+    private boolean jlink(@Nonnull String addModules, @Nonnull List<String> jlinkOptions, @Nonnull String imageKey,
+                       @Nonnull Path modulesHome, @Nonnull Path outputDir, boolean isCached) {
+        Optional<ImageCache> imageCache = this.imageCache(modulesHome);
+        if (imageCache.isPresent() && this.report.time("imageRestore", () -> imageCache.get().restore(imageKey, outputDir))) {
+            ifThen(this.isVerbose, () -> System.out.println("Dplink: image for " + addModules + " restored from cache"));
+            return false;
+        }
+
+        List<String> jlinkArgs = new ArrayList<>(Arrays.asList(
                 "--module-path",
-                this.modulesHome.toString() + "/jmods:mlib",
+                modulesHome.toString() + "/jmods:mlib" + this.appModules.map(appModules -> ":" + appModules.modulePath()).orElse(""),
                 "--add-modules",
-                dependentJavaModulesString,
+                addModules,
                 "--output",
-                outputDir.toString(),
-                "--no-header-files",
-                "--no-man-pages",
-                "--compress=2"
+                outputDir.toString()
+        ));
+        jlinkArgs.addAll(jlinkOptions);
 
-        };
+        this.report.time("jlink", () -> this.toolRunner.run("jlink", jlinkArgs, null));
 
-        this.execCommand(jlinkCommand);
+        if (isCached) {
+            imageCache.ifPresent(cache -> this.report.time("imageStore", () -> cache.store(imageKey, outputDir)));
+        }
+        return true;
     }
 
-    private void createApp(@Nonnull DplinkConfig dplinkConfig) {
-
-        Path jreLibPath = dplinkConfig.getOutputDir().resolve("lib");
+    private void createApps(@Nonnull DplinkConfig dplinkConfig, @Nonnull Path imageDir, boolean isAppCdsTarget) {
+        Path jreLibPath = imageDir.resolve("lib");
 
         fatalGuard(exists(jreLibPath), "No lib dir at: " + jreLibPath.getParent().toString());
         fatalGuard(isDirectory(jreLibPath), "lib is not a directory: " + jreLibPath.getParent().toString());
-        fatalGuard(dplinkConfig.getMainClassName().isPresent(), "Missing main class name - needed for executable jar");
 
+        for (Application application : this.applications) {
+            this.createApp(application, imageDir, isAppCdsTarget, dplinkConfig.isLinkLibs());
+        }
+    }
+
+    private void createApp(@Nonnull Application application, @Nonnull Path imageDir, boolean isAppCdsTarget, boolean linkLibs) {
         try {
-            String executableJarName = this.executableJarName(dplinkConfig.getBuildLibsDir(), dplinkConfig.getExecutableJar());
-            String classpath = this.classpath(dplinkConfig.getBuildLibsDir(), jreLibPath, executableJarName);
-            FileUtils.copyDirectory(dplinkConfig.getBuildLibsDir().toFile(), jreLibPath.toFile());
+            String executableJarName = this.executableJarName(application);
+            String mainClass = application.getMainClassName();
+            String libPrefix = this.libPrefix(application);
+            String launch;
+            if (this.appModules.isPresent()) {
+                // the app is in the image's modules rather than in jars
+                launch = "-m " + this.appModules.get().moduleName(executableJarName) + "/" + mainClass;
+            } else {
+                // not -jar, which makes the executable jar the whole classpath
+                List<String> classpathJarNames = new ArrayList<>();
+                classpathJarNames.add(libPrefix + executableJarName);
+                classpathJarNames.addAll(this.classpathJarNames(application, executableJarName));
+                // quoted since the name of a nested main class has a $ in it
+                launch = "-cp " + classpath(classpathJarNames) + " '" + mainClass + "'";
+                this.copyLibs(this.appLibPaths(application), imageDir.resolve("lib").resolve(libPrefix), linkLibs);
+            }
+
+            String jvmArgs = application.getJvmArgs().orElse("");
+            String appArgs = application.getAppArgs().orElse("");
 
-            String jvmArgs = dplinkConfig.getJvmArgs().orElse("");
-            String appArgs = dplinkConfig.getAppArgs().orElse("");
+            if (isAppCdsTarget) {
+                // created once the image is in place, the JVM ignores the archive until then
+                jvmArgs = "-XX:SharedArchiveFile=\"" + APP_HOME + "/lib/" + libPrefix + APP_CDS_ARCHIVE + "\" " + jvmArgs;
+            }
 
-            this.makeAppScript(dplinkConfig.getMainClassName().get(), executableJarName, classpath, jvmArgs, appArgs, dplinkConfig.getOutputDir());
+            long scriptStartNanos = System.nanoTime();
+            this.makeAppScript(application.getName(), launch, jvmArgs, appArgs, imageDir);
+            this.report.record("appScript", System.nanoTime() - scriptStartNanos);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
 
-    private void makeAppScript(@Nonnull String mainClass, @Nonnull String executableJarName, @Nonnull String classpath,
-                               @Nonnull String jvmArgs, @Nonnull String appArgs, @Nonnull Path outputDir) throws IOException {
+    private void updateApp(@Nonnull DplinkConfig dplinkConfig, @Nonnull Path imageDir, boolean isAppCdsTarget,
+                           @Nonnull List<String> previousJarNames, @Nonnull List<String> jarNames) {
+        try {
+            for (String previousJarName : previousJarNames) {
+                if (!jarNames.contains(previousJarName)) {
+                    Files.deleteIfExists(imageDir.resolve("lib").resolve(previousJarName));
+                }
+            }
+            for (Application application : this.applications) {
+                Files.deleteIfExists(imageDir.resolve("bin").resolve(application.getName()));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.createApps(dplinkConfig, imageDir, isAppCdsTarget);
+    }
 
+    /**
+     * @return the names of the jars copied into the lib directory of the image, relative to the lib directory
+     */
+    private List<String> appJarNames() {
+        if (this.appModules.isPresent()) {
+            return Collections.emptyList();
+        }
+        return this.applications.stream()
+                .flatMap(application -> this.appLibPaths(application).stream()
+                        .map(path -> this.libPrefix(application) + path.getFileName()))
+                .distinct()
+                .sorted()
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * @return the application's jars
+     */
+    private List<Path> appLibPaths(@Nonnull Application application) {
+        return application.getLibs().isEmpty() ? this.defaultLibPaths : application.getLibs();
+    }
 
-        String commandString = outputDir.resolve("bin") + "/java " + jvmArgs + " -jar " +
-                outputDir.resolve("lib") + "/" +
-                executableJarName + " " + mainClass + " " + appArgs;
+    /**
+     * @return the subdirectory of the lib directory of the image in which the application's jars are, if any
+     */
+    private String libPrefix(@Nonnull Application application) {
+        // an app on its own has its jars directly in lib as it always has
+        return this.isMultiApp ? application.getName() + "/" : "";
+    }
 
-        if (classpath.length() > 0) {
-            commandString = commandString + " -cp " + classpath;
+    private void copyLibs(@Nonnull List<Path> libPaths, @Nonnull Path libDir, boolean linkLibs) throws IOException {
+        long startNanos = System.nanoTime();
+        long bytes = FileUtils.syncFiles(libPaths, libDir, linkLibs);
+        long elapsedNanos = System.nanoTime() - startNanos;
+        this.report.record("copyLibs", elapsedNanos);
+        long elapsedMillis = Math.max(1, elapsedNanos / 1_000_000);
+        ifThen(this.isVerbose, () -> System.out.println("Dplink: " + (linkLibs ? "linked or copied " : "copied ") +
+                bytes / FileUtils.ONE_KB + " KB of libs in " + elapsedMillis + " ms (" +
+                bytes * 1000 / elapsedMillis / FileUtils.ONE_KB + " KB/s)"));
+    }
+
+    private void createAppCdsArchive(@Nonnull Application application, @Nonnull Path outputDir) throws IOException {
+        String libPrefix = this.libPrefix(application);
+        TrainingRun trainingRun = this.trainingRun(application, outputDir);
+
+        Path appCdsArchive = outputDir.resolve("lib").resolve(libPrefix + APP_CDS_ARCHIVE);
+        int imageRelease = JdkRelease.feature(JdkRelease.of(outputDir));
+        fatalGuard(imageRelease >= 10, "AppCDS archives need a JDK 10 or later image but the image is for " + JdkRelease.of(outputDir));
+
+        if (imageRelease >= DYNAMIC_APP_CDS_RELEASE) {
+            if (!exists(outputDir.resolve("lib/server/classes.jsa"))) {
+                // the default CDS archive that the dynamic archive is layered on
+                this.toolRunner.exec(new String[]{outputDir.resolve("bin/java").toString(), "-Xshare:dump"}, null);
+            }
+            trainingRun.run(Collections.singletonList("-XX:ArchiveClassesAtExit=" + appCdsArchive));
+        } else {
+            // there's no base archive in the image for a dynamic archive so dump a static archive of the classes loaded
+            Path classList = outputDir.resolve("lib").resolve(libPrefix + "app.classlist");
+            trainingRun.run(Collections.singletonList("-XX:DumpLoadedClassList=" + classList));
+            List<String> dumpCommand = new ArrayList<>(Arrays.asList(outputDir.resolve("bin/java").toString(), "-Xshare:dump",
+                    "-XX:SharedClassListFile=" + classList, "-XX:SharedArchiveFile=" + appCdsArchive));
+            if (!this.appModules.isPresent()) {
+                dumpCommand.addAll(Arrays.asList("-cp", trainingRun.classpath()));
+            }
+            this.toolRunner.exec(dumpCommand.toArray(new String[0]), null);
+            Files.delete(classList);
         }
 
-        Path appFilePath = Files.createFile(outputDir.resolve("bin/app"));
+        fatalGuard(exists(appCdsArchive), "The training run did not create an AppCDS archive at " + appCdsArchive);
+    }
+
+    private TrainingRun trainingRun(@Nonnull Application application, @Nonnull Path imageDir) {
+        String executableJarName = this.executableJarName(application);
+        String libPrefix = this.libPrefix(application);
+        return new TrainingRun(this.toolRunner, imageDir, application, libPrefix + executableJarName,
+                this.classpathJarNames(application, executableJarName).stream()
+                        .map(jarName -> libPrefix + jarName)
+                        .collect(Collectors.toList()),
+                this.appModules.map(appModules -> appModules.moduleName(executableJarName)));
+    }
+
+    private void makeAppScript(@Nonnull String appName, @Nonnull String launch, @Nonnull String jvmArgs,
+                               @Nonnull String appArgs, @Nonnull Path outputDir) throws IOException {
+
+
+        // paths are relative to the image directory (wherever the script is run from) so that the image can be moved
+        String commandString = "\"" + APP_HOME + "/bin/java\" " + jvmArgs + " " + launch + " " + appArgs;
+
+        Path appFilePath = Files.createFile(outputDir.resolve("bin").resolve(appName));
         try (BufferedWriter writer = Files.newBufferedWriter(appFilePath)) {
             writer.write("#!/usr/bin/env bash\n");
+            writer.write("APP_HOME=\"$(cd \"$(dirname \"$0\")/..\" && pwd)\"\n");
             // $* adds command line args
             writer.write(commandString + " $*\n");
         }
 
-        this.execCommand(new String[]{"chmod", "uog+x", appFilePath.toString()});
+        this.toolRunner.exec(new String[]{"chmod", "uog+x", appFilePath.toString()}, null);
     }
 
-    private String classpath(@Nonnull Path buildLibsDir, @Nonnull Path jreLibDir, @Nonnull String executableJarName) throws IOException {
-        return Files.list(buildLibsDir)
-                // only get jars from the build libs directory that are not the executable jar
-                .filter(path -> !(executableJarName.equals(path.getFileName().toString())))
+    private List<String> classpathJarNames(@Nonnull Application application, @Nonnull String executableJarName) {
+        return this.appLibPaths(application).stream()
                 // map out just the file name
                 .map(path -> path.getFileName().toString())
-                // prepend the file name with the jreLibDir - because that's where the jars are at runtime
-                .map(fileName -> jreLibDir.toString() + "/" + fileName)
+                // only the jars that are not the executable jar
+                .filter(fileName -> !(executableJarName.equals(fileName)))
+                // in a stable order so that the same jars always make the same script
+                .sorted()
+                // in the application's lib directory
+                .map(fileName -> this.libPrefix(application) + fileName)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * @param classpathJarNames the names of the jars in the lib directory of the image, the executable jar first
+     * @return the classpath of the app script
+     */
+    static String classpath(@Nonnull List<String> classpathJarNames) {
+        return classpathJarNames.stream()
+                // prepend the file name with the image lib dir - because that's where the jars are at runtime
+                .map(fileName -> "\"" + APP_HOME + "/lib/" + fileName + "\"")
                 // collect them all together joined by a : for the path separator
                 .collect(Collectors.joining(":"));
     }
 
-    private String executableJarName(@Nonnull Path jreLibDir, Optional<String> executableJar) {
-        Function<Path, String> findExecutableJar = (Path libDir) -> {
+    private String executableJarName(@Nonnull Application application) {
+        List<Path> appLibPaths = this.appLibPaths(application);
+        String executableJarName = application.getExecutableJar().map(DplinkExecutor::jarName).orElseGet(() -> {
+            fatalGuard(appLibPaths.size() == 1, "Expected only a single jar " + (this.isMultiApp ? "for " +
+                    application.getName() + " " : "") + "but found " + appLibPaths.size() +
+                    ". Try using the executableJar property to specify the executable jar file name.");
+            return appLibPaths.get(0).getFileName().toString();
+        });
+        // guards that it's one of the libs
+        libPath(appLibPaths, executableJarName);
+        return executableJarName;
+    }
+
+    private static Path libPath(@Nonnull List<Path> libPaths, @Nonnull String jarName) {
+        Optional<Path> libPath = libPaths.stream()
+                .filter(path -> jarName.equals(path.getFileName().toString()))
+                .findFirst();
+        fatalGuard(libPath.isPresent(), "Executable jar " + jarName + " does not exist.");
+        return libPath.get();
+    }
+
+    /**
+     * @return the jars of all the applications i.e. their own libs, and the default libs for any that don't have their
+     * own
+     */
+    private List<Path> libPaths(@Nonnull DplinkConfig dplinkConfig) {
+        boolean isDefaultLibs = !this.isMultiApp || this.applications.stream().anyMatch(application -> application.getLibs().isEmpty());
+        this.defaultLibPaths = isDefaultLibs ? this.defaultLibPaths(dplinkConfig) : Collections.emptyList();
+        List<Path> libPaths = Stream.concat(this.defaultLibPaths.stream(),
+                this.applications.stream().flatMap(application -> application.getLibs().stream()))
+                .distinct()
+                .collect(Collectors.toList());
+
+        if (this.isMultiApp && !dplinkConfig.isLinkApp()) {
+            // each application's libs go in its own lib directory in the image
+            this.applications.forEach(application -> guardDistinctNames(this.appLibPaths(application)));
+        } else {
+            // the libs all go in the lib directory of the image (or in the image's modules)
+            guardDistinctNames(libPaths);
+        }
+        ifThen(this.isVerbose, () -> System.out.println("Dplink: " + libPaths.size() + " libs"));
+        return libPaths;
+    }
+
+    /**
+     * @return the libs of the config or, if it has none, the jars in its buildLibsDir
+     */
+    private List<Path> defaultLibPaths(@Nonnull DplinkConfig dplinkConfig) {
+        List<Path> libPaths;
+        if (!dplinkConfig.getLibs().isEmpty()) {
+            libPaths = dplinkConfig.getLibs();
+        } else {
+            Path buildLibsDir = dplinkConfig.getBuildLibsDir();
             try {
-                List<Path> jarFiles = Files.list(libDir).collect(Collectors.toList());
-                fatalGuard(jarFiles.size() == 1, "Expected only a single jar in " +
-                        jreLibDir.toString() + " but found " + jarFiles.size() + ". Try using the executableJar property to specify the executable jar file name.");
-                return jarFiles.get(0).getFileName().toString();
+                Files.createDirectories(buildLibsDir);
             } catch (IOException e) {
                 throw new RuntimeException(e);
             }
-        };
-        String executableJarName = executableJar.orElseGet(() -> findExecutableJar.apply(jreLibDir));
 
-        fatalGuard(exists(jreLibDir.resolve(executableJarName)), "Executable jar " +
-                jreLibDir.resolve(executableJarName).toString() + " does not exist.");
+            fatalGuard(exists(buildLibsDir), "No libs dir at: " + buildLibsDir.getParent().toString());
+            fatalGuard(isDirectory(buildLibsDir), "libs is not a directory: " + buildLibsDir.getParent().toString());
 
-        return executableJarName;
+            try (Stream<Path> paths = Files.list(buildLibsDir)) {
+                libPaths = paths.sorted().collect(Collectors.toList());
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        if (dplinkConfig.isFatJar() && dplinkConfig.getExecutableJar().isPresent()) {
+            // a fat jar needn't be one of the libs e.g. a shadow jar isn't on a java project's runtime classpath
+            String executableJarName = jarName(dplinkConfig.getExecutableJar().get());
+            if (libPaths.stream().noneMatch(path -> executableJarName.equals(path.getFileName().toString()))) {
+                Path fatJarPath = dplinkConfig.getBuildLibsDir().resolve(dplinkConfig.getExecutableJar().get());
+                fatalGuard(Files.isRegularFile(fatJarPath), "Executable jar " + fatJarPath + " does not exist.");
+                libPaths = Stream.concat(libPaths.stream(), Stream.of(fatJarPath)).collect(Collectors.toList());
+            }
+        }
+        return libPaths;
     }
 
-    private void execCommand(@Nonnull String[] command) {
-        this.execCommand(command, null);
+    /**
+     * @param executableJar the name of a jar, or its path (e.g. of a fat jar that isn't one of the libs)
+     * @return the name of the jar
+     */
+    private static String jarName(@Nonnull String executableJar) {
+        return Paths.get(executableJar).getFileName().toString();
     }
 
-    private Optional<Stream<String>> execCommand(@Nonnull String[] command, @Nullable Function<InputStream, Stream<String>> commandOutputProcessing) {
-        ifThen(this.isVerbose, () -> System.out.println("Dplink: " + Arrays.stream(command).collect(Collectors.joining(" "))));
-        try {
-            Process commandProcess = Runtime.getRuntime().exec(command);
-            commandProcess.waitFor(20, TimeUnit.MINUTES);
-            try (InputStream commandInputStream = commandProcess.getInputStream()) {
-                fatalGuard(commandProcess.exitValue() == 0, () -> {
-                    BufferedReader jlinkReader = new BufferedReader(new InputStreamReader(commandInputStream));
-                    jlinkReader.lines().forEach(System.err::println);
-                    throw new RuntimeException("Command failed with exit code " + commandProcess.exitValue() + ": " +
-                            Arrays.stream(command).collect(Collectors.joining(" ")));
-                });
+    private static void guardDistinctNames(@Nonnull List<Path> libPaths) {
+        Map<String, List<Path>> libPathsByName = libPaths.stream()
+                .collect(Collectors.groupingBy(path -> path.getFileName().toString()));
+        libPathsByName.forEach((jarName, paths) -> fatalGuard(paths.size() == 1,
+                "More than one lib is named " + jarName + ": " + paths));
+    }
 
-                return commandOutputProcessing != null ? Optional.of(commandOutputProcessing.apply(commandInputStream)) : Optional.empty();
-            }
-        } catch (IOException | InterruptedException e) {
-            throw new RuntimeException(e);
+    private static class LinkedImage {
+        private final String imageKey;
+        private final List<String> jarNames;
+
+        LinkedImage(@Nonnull String imageKey, @Nonnull List<String> jarNames) {
+            this.imageKey = imageKey;
+            this.jarNames = jarNames;
         }
     }
 }
@@ -0,0 +1,165 @@
+package com.alkimiapps.gradle.plugin.dplink.internal;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import javax.annotation.Nonnull;
+
+/**
+ * The java modules on which the app's jars depend, as written to a lock file (e.g. dplink.lock kept with the project's
+ * sources) so that builds with the same jars can skip the analysis of the jars altogether, even without any cache.
+ * <p>
+ * The lock file is a text file of tab separated lines, sorted so that it diffs well:
+ * <pre>
+ * analyser     the analysis the java modules were found by e.g. "jdeps 17"
+ * jar          the name, content hash and java modules of each jar
+ * add-modules  the java modules linked into the image
+ * </pre>
+ * The lock matches a build when the build analyses jars with the same content (whatever their names) in the same way.
+ */
+class DplinkLock {
+
+    private static final String HEADER = "# The java modules on which the app's jars depend, written by gradle dplinkLock";
+
+    private final String analyser;
+    private final List<LockedJar> jars;
+    private final Set<String> javaModules;
+
+    /**
+     * @param analyser the analysis the java modules were found by e.g. "jdeps 17"
+     * @param jarHashes the content hash of each jar
+     * @param jarJavaModules the java modules on which each jar depends
+     * @param javaModules the java modules to link
+     */
+    DplinkLock(@Nonnull String analyser, @Nonnull Map<Path, String> jarHashes,
+               @Nonnull Map<Path, Set<String>> jarJavaModules, @Nonnull Set<String> javaModules) {
+        this(analyser, jarHashes.keySet().stream()
+                .map(jarPath -> new LockedJar(jarPath.getFileName().toString(), jarHashes.get(jarPath), jarJavaModules.get(jarPath)))
+                .collect(Collectors.toList()), javaModules);
+    }
+
+    private DplinkLock(@Nonnull String analyser, @Nonnull List<LockedJar> jars, @Nonnull Set<String> javaModules) {
+        this.analyser = analyser;
+        this.jars = jars.stream()
+                .sorted(Comparator.comparing((LockedJar jar) -> jar.name).thenComparing(jar -> jar.hash))
+                .collect(Collectors.toList());
+        this.javaModules = new TreeSet<>(javaModules);
+    }
+
+    /**
+     * @param lockFile a lock file
+     * @return the lock in the file
+     */
+    static DplinkLock read(@Nonnull Path lockFile) {
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(lockFile, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read " + lockFile, e);
+        }
+
+        String analyser = null;
+        Set<String> javaModules = null;
+        List<LockedJar> jars = new ArrayList<>();
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i);
+            if (line.trim().isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] fields = line.split("\t", -1);
+            if (fields[0].equals("analyser") && fields.length == 2) {
+                analyser = fields[1];
+            } else if (fields[0].equals("jar") && fields.length == 4) {
+                jars.add(new LockedJar(fields[1], fields[2], modules(fields[3])));
+            } else if (fields[0].equals("add-modules") && fields.length == 2) {
+                javaModules = modules(fields[1]);
+            } else {
+                throw new DplinkException("Malformed line " + (i + 1) + " in " + lockFile + ", run gradle dplinkLock to " +
+                        "write it again", Collections.singletonList(line));
+            }
+        }
+        if (analyser == null || javaModules == null) {
+            throw new DplinkException("Incomplete " + lockFile + ", run gradle dplinkLock to write it again",
+                    Collections.emptyList());
+        }
+        return new DplinkLock(analyser, jars, javaModules);
+    }
+
+    /**
+     * @param lockFile the file to write the lock to
+     */
+    void write(@Nonnull Path lockFile) {
+        List<String> lines = new ArrayList<>();
+        lines.add(HEADER);
+        lines.add("analyser\t" + this.analyser);
+        this.jars.forEach(jar -> lines.add("jar\t" + jar.name + "\t" + jar.hash + "\t" + String.join(",", jar.javaModules)));
+        lines.add("add-modules\t" + String.join(",", this.javaModules));
+        try {
+            Files.write(lockFile, lines, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write " + lockFile, e);
+        }
+    }
+
+    /**
+     * @return the java modules to link
+     */
+    Set<String> javaModules() {
+        return this.javaModules;
+    }
+
+    /**
+     * @param analyser the analysis the build would find the java modules by
+     * @param jarHashes the content hash of each of the build's jars
+     * @return how the lock differs from the build, nothing if the lock matches the build
+     */
+    List<String> differences(@Nonnull String analyser, @Nonnull Map<Path, String> jarHashes) {
+        List<String> differences = new ArrayList<>();
+        if (!this.analyser.equals(analyser)) {
+            differences.add("locked with " + this.analyser + " but analysing with " + analyser);
+        }
+        Set<String> lockedHashes = this.jars.stream().map(jar -> jar.hash).collect(Collectors.toSet());
+        Set<String> lockedNames = this.jars.stream().map(jar -> jar.name).collect(Collectors.toSet());
+        Set<String> hashes = new HashSet<>(jarHashes.values());
+        Set<String> names = jarHashes.keySet().stream().map(jarPath -> jarPath.getFileName().toString()).collect(Collectors.toSet());
+        jarHashes.entrySet().stream()
+                .filter(jarHash -> !lockedHashes.contains(jarHash.getValue()))
+                .map(jarHash -> jarHash.getKey().getFileName().toString())
+                .map(name -> (lockedNames.contains(name) ? "changed: " : "not locked: ") + name)
+                .sorted()
+                .forEach(differences::add);
+        this.jars.stream()
+                .filter(jar -> !hashes.contains(jar.hash) && !names.contains(jar.name))
+                .map(jar -> "locked but no longer used: " + jar.name)
+                .forEach(differences::add);
+        return differences;
+    }
+
+    private static Set<String> modules(@Nonnull String modules) {
+        return modules.isEmpty() ? new TreeSet<>() : new TreeSet<>(Arrays.asList(modules.split(",")));
+    }
+
+    private static class LockedJar {
+        private final String name;
+        private final String hash;
+        private final Set<String> javaModules;
+
+        LockedJar(@Nonnull String name, @Nonnull String hash, @Nonnull Set<String> javaModules) {
+            this.name = name;
+            this.hash = hash;
+            this.javaModules = new TreeSet<>(javaModules);
+        }
+    }
+}
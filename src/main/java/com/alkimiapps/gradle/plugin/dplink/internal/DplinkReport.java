@@ -0,0 +1,206 @@
+package com.alkimiapps.gradle.plugin.dplink.internal;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.annotation.Nonnull;
+
+import com.alkimiapps.javatools.Json;
+
+/**
+ * Records where a dplink run spends its time and what the images it creates are made of, and writes that as a JSON
+ * report so that runs can be compared across builds.
+ * <p>
+ * Each phase (e.g. jlink) is timed and counted, each jdeps run is recorded with the jars it analysed and the images
+ * are broken down by the size of each java module (the size of its classes and resources, uncompressed) and of each
+ * jar copied into them. The java modules are only sized in an image jlink has just linked, since that means walking
+ * every class of the image and they're unchanged in an image restored from the image cache or updated in place. Phases
+ * may be timed concurrently.
+ */
+class DplinkReport {
+
+    private final long startMillis = System.currentTimeMillis();
+    private final Map<String, Phase> phases = new LinkedHashMap<>();
+    private final List<Map<String, Object>> jdepsRuns = new ArrayList<>();
+    private final Map<String, Map<String, Object>> images = new TreeMap<>();
+
+    /**
+     * Time a phase.
+     *
+     * @param phase the phase name e.g. jlink
+     * @param work the work done in the phase
+     * @return the result of the work
+     */
+    <T> T time(@Nonnull String phase, @Nonnull Supplier<T> work) {
+        long startNanos = System.nanoTime();
+        try {
+            return work.get();
+        } finally {
+            this.record(phase, System.nanoTime() - startNanos);
+        }
+    }
+
+    /**
+     * Time a phase.
+     *
+     * @param phase the phase name e.g. jlink
+     * @param work the work done in the phase
+     */
+    void time(@Nonnull String phase, @Nonnull Runnable work) {
+        this.time(phase, () -> {
+            work.run();
+            return null;
+        });
+    }
+
+    /**
+     * Time a jdeps run.
+     *
+     * @param jarPaths the jars the jdeps run analyses
+     * @param jdepsRun the jdeps run
+     * @return the result of the jdeps run
+     */
+    <T> T timeJdeps(@Nonnull List<Path> jarPaths, @Nonnull Supplier<T> jdepsRun) {
+        long startNanos = System.nanoTime();
+        try {
+            return jdepsRun.get();
+        } finally {
+            long elapsedNanos = System.nanoTime() - startNanos;
+            this.record("jdeps", elapsedNanos);
+
+            Map<String, Object> run = new LinkedHashMap<>();
+            run.put("jars", jarPaths.stream().map(jarPath -> jarPath.getFileName().toString()).collect(Collectors.toList()));
+            run.put("bytes", jarPaths.stream().mapToLong(jarPath -> jarPath.toFile().length()).sum());
+            run.put("millis", elapsedNanos / 1_000_000);
+            synchronized (this) {
+                this.jdepsRuns.add(run);
+            }
+        }
+    }
+
+    /**
+     * Break down the size of a (complete) image.
+     *
+     * @param imageDir the image
+     * @param modulesHome the java installation the image was created from
+     * @param copiedJarNames the names of the jars copied into the lib directory of the image
+     * @param isRelinked true if jlink linked the image, which is when the size of each java module is added
+     */
+    void addImage(@Nonnull Path imageDir, @Nonnull Path modulesHome, @Nonnull List<String> copiedJarNames,
+                  boolean isRelinked) {
+        Map<String, Object> image = new LinkedHashMap<>();
+        // the release file of an image doesn't say what platform it's for
+        image.put("release", JdkRelease.of(modulesHome));
+        image.put("platform", JdkRelease.platform(modulesHome));
+        image.put("bytes", this.time("imageSize", () -> treeSize(imageDir)));
+        if (isRelinked) {
+            image.put("moduleBytes", this.time("moduleSize", () -> moduleSizes(imageDir)));
+        }
+        Map<String, Long> jarSizes = new TreeMap<>();
+        copiedJarNames.forEach(jarName -> jarSizes.put(jarName, imageDir.resolve("lib").resolve(jarName).toFile().length()));
+        image.put("jarBytes", jarSizes);
+        synchronized (this) {
+            this.images.put(imageDir.toString(), image);
+        }
+    }
+
+    /**
+     * Write the report.
+     *
+     * @param reportFile the report file, its directory is created if need be
+     */
+    synchronized void write(@Nonnull Path reportFile) {
+        Map<String, Object> phases = new LinkedHashMap<>();
+        this.phases.forEach((name, phase) -> phases.put(name, phase.toMap()));
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("startMillis", this.startMillis);
+        report.put("totalMillis", System.currentTimeMillis() - this.startMillis);
+        report.put("phases", phases);
+        report.put("jdepsRuns", this.jdepsRuns);
+        report.put("images", this.images);
+
+        try {
+            Files.createDirectories(reportFile.getParent());
+            Files.write(reportFile, Json.toJson(report).getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Record a phase that was timed by the caller.
+     *
+     * @param phase the phase name e.g. copyLibs
+     * @param elapsedNanos how long the phase took
+     */
+    synchronized void record(@Nonnull String phase, long elapsedNanos) {
+        this.phases.computeIfAbsent(phase, name -> new Phase()).add(elapsedNanos);
+    }
+
+    private static long treeSize(@Nonnull Path directory) {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            return paths.filter(Files::isRegularFile).mapToLong(path -> {
+                try {
+                    return Files.size(path);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }).sum();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static Map<String, Long> moduleSizes(@Nonnull Path imageDir) {
+        if (!Files.isRegularFile(imageDir.resolve("lib/modules"))) {
+            return Collections.emptyMap();
+        }
+        // the jrt file system of the image (rather than of the JDK running the build) lists the image's modules
+        try (FileSystem jrtFileSystem = FileSystems.newFileSystem(URI.create("jrt:/"),
+                Collections.singletonMap("java.home", imageDir.toString()));
+             Stream<Path> modules = Files.list(jrtFileSystem.getPath("/modules"))) {
+            Map<String, Long> moduleSizes = new TreeMap<>();
+            for (Path module : modules.collect(Collectors.toList())) {
+                moduleSizes.put(module.getFileName().toString(), treeSize(module));
+            }
+            return moduleSizes;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static class Phase {
+        private long count;
+        private long totalNanos;
+        private long maxNanos;
+
+        void add(long elapsedNanos) {
+            this.count++;
+            this.totalNanos += elapsedNanos;
+            this.maxNanos = Math.max(this.maxNanos, elapsedNanos);
+        }
+
+        Map<String, Object> toMap() {
+            Map<String, Object> phase = new LinkedHashMap<>();
+            phase.put("count", this.count);
+            phase.put("totalMillis", this.totalNanos / 1_000_000);
+            phase.put("maxMillis", this.maxNanos / 1_000_000);
+            return phase;
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.alkimiapps.gradle.plugin.dplink.internal;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.annotation.Nonnull;
+
+import static com.alkimiapps.javatools.Sugar.ifThen;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+/**
+ * Keeps an image up to date with the app's jars while they're being rebuilt, e.g. by gradle jar in another terminal.
+ * <p>
+ * The jars (the libs and the applications' libs, or else the jars in the build libs dir) are watched and the image is dplinked again each time
+ * they change. The same {@link DplinkExecutor} dplinks every time, so only the jars that have changed are analysed
+ * (the others are remembered by the {@link AnalysisService}) and, when the java modules haven't changed, the app's
+ * jars and script are updated in the existing image rather than linking a new image.
+ * <p>
+ * A dplink that fails is reported and the jars are watched for the next change. Watching stops when the build is
+ * cancelled, which is checked every second rather than relying on the thread being interrupted, since not every gradle
+ * version interrupts the task actions of a cancelled build.
+ */
+public class DplinkWatcher {
+
+    // changes are batched until there have been none for this long, a jar is usually written in several steps
+    private static final long QUIET_MILLIS = 500;
+
+    // how often to check whether the build has been cancelled while there are no changes
+    private static final long CANCELLED_CHECK_MILLIS = 1000;
+
+    private final DplinkConfig dplinkConfig;
+    private final DplinkExecutor dplinkExecutor = new DplinkExecutor();
+
+    /**
+     * @param dplinkConfig what to dplink, any lock file is ignored since the jars are expected to change
+     */
+    public DplinkWatcher(@Nonnull DplinkConfig dplinkConfig) {
+        this.dplinkConfig = dplinkConfig;
+        this.dplinkConfig.setLockFile(Optional.empty());
+    }
+
+    /**
+     * Dplink and then dplink again whenever the jars change, until the build is cancelled or the thread is interrupted.
+     *
+     * @param isCancelled true once the build has been cancelled
+     */
+    public void watch(@Nonnull BooleanSupplier isCancelled) {
+        Set<Path> watchedDirs = new TreeSet<>();
+        Set<Path> watchedJars = new HashSet<>();
+        // the libs, including those of each application
+        List<Path> libs = Stream.concat(this.dplinkConfig.getLibs().stream(),
+                this.dplinkConfig.getApplications().stream().flatMap(application -> application.getLibs().stream()))
+                .collect(Collectors.toList());
+        if (libs.isEmpty()) {
+            watchedDirs.add(this.dplinkConfig.getBuildLibsDir().toAbsolutePath());
+        } else {
+            libs.forEach(lib -> {
+                watchedJars.add(lib.toAbsolutePath());
+                watchedDirs.add(lib.toAbsolutePath().getParent());
+            });
+        }
+
+        try (WatchService watchService = FileSystems.getDefault().newWatchService()) {
+            for (Path watchedDir : watchedDirs) {
+                watchedDir.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+            }
+
+            this.dplink();
+            System.out.println("Dplink: watching " + (watchedJars.isEmpty() ? watchedDirs : watchedJars.size() + " jars") +
+                    " for changes");
+            while (!Thread.currentThread().isInterrupted() && !isCancelled.getAsBoolean()) {
+                WatchKey watchKey = watchService.poll(CANCELLED_CHECK_MILLIS, TimeUnit.MILLISECONDS);
+                if (watchKey == null) {
+                    continue;
+                }
+                Set<Path> changedJars = this.changedJars(watchKey, watchedJars);
+                while ((watchKey = watchService.poll(QUIET_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+                    changedJars.addAll(this.changedJars(watchKey, watchedJars));
+                }
+                if (!changedJars.isEmpty()) {
+                    System.out.println("Dplink: " + changedJars.size() + " jars changed, dplinking again");
+                    this.dplink();
+                }
+            }
+        } catch (InterruptedException e) {
+            // stop watching
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Set<Path> changedJars(@Nonnull WatchKey watchKey, @Nonnull Set<Path> watchedJars) {
+        Set<Path> changedJars = new HashSet<>();
+        Path dir = (Path) watchKey.watchable();
+        for (WatchEvent<?> event : watchKey.pollEvents()) {
+            if (event.kind() == OVERFLOW) {
+                // events were lost, so assume there was a change
+                changedJars.add(dir);
+                continue;
+            }
+            Path changedPath = dir.resolve((Path) event.context());
+            boolean isWatched = watchedJars.isEmpty() ? changedPath.getFileName().toString().endsWith(".jar") :
+                    watchedJars.contains(changedPath);
+            if (isWatched) {
+                changedJars.add(changedPath);
+            }
+        }
+        watchKey.reset();
+        return changedJars;
+    }
+
+    private void dplink() {
+        long startNanos = System.nanoTime();
+        try {
+            this.dplinkExecutor.dplink(this.dplinkConfig);
+            System.out.println("Dplink: image up to date in " +
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos) + " ms");
+        } catch (RuntimeException e) {
+            // unless it was cancelled
+            ifThen(!Thread.currentThread().isInterrupted(), () -> System.out.println("Dplink: failed, " + e.getMessage()));
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.alkimiapps.gradle.plugin.dplink.internal;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import javax.annotation.Nonnull;
+
+import com.alkimiapps.javatools.Hashes;
+
+/**
+ * Finds the java modules on which a fat jar depends when the fat jar nests its dependencies as jars (e.g. under
+ * BOOT-INF/lib in a Spring Boot jar), which jdeps doesn't look inside.
+ * <p>
+ * The classes of the fat jar itself and each of the nested jars are analysed by the {@link BytecodeAnalyzer}. The
+ * nested jars are streamed straight out of the fat jar, so nothing is extracted to disk, and are analysed in parallel.
+ * The results for each nested jar are cached by its content hash, so a nested jar that hasn't changed since a previous
+ * build (the usual case for dependencies) is only hashed, not analysed.
+ */
+class FatJarAnalyzer {
+
+    private final BytecodeAnalyzer bytecodeAnalyzer;
+    private final JdepsCache cache;
+    private final DplinkReport report;
+
+    /**
+     * @param bytecodeAnalyzer analyses the classes
+     * @param cache the cache of bytecode analysis results
+     * @param report times the analysis
+     */
+    FatJarAnalyzer(@Nonnull BytecodeAnalyzer bytecodeAnalyzer, @Nonnull JdepsCache cache, @Nonnull DplinkReport report) {
+        this.bytecodeAnalyzer = bytecodeAnalyzer;
+        this.cache = cache;
+        this.report = report;
+    }
+
+    /**
+     * @param jarPath a jar
+     * @return true if the jar contains other jars
+     */
+    static boolean hasNestedJars(@Nonnull Path jarPath) {
+        try (ZipFile jarFile = new ZipFile(jarPath.toFile())) {
+            return !nestedJarEntries(jarFile).isEmpty();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read " + jarPath, e);
+        }
+    }
+
+    /**
+     * @param fatJarPath the fat jar to analyse
+     * @return the java modules on which the fat jar, including the jars nested in it, depends
+     */
+    Set<String> javaModulesOfJar(@Nonnull Path fatJarPath) {
+        Set<String> javaModules = new HashSet<>(
+                this.report.time("bytecodeAnalysis", () -> this.bytecodeAnalyzer.javaModulesOfJar(fatJarPath)));
+
+        try (ZipFile fatJar = new ZipFile(fatJarPath.toFile())) {
+            List<ZipEntry> nestedJars = nestedJarEntries(fatJar);
+            Map<ZipEntry, String> nestedJarHashes = this.report.time("hashLibs", () -> Parallel.map(nestedJars, nestedJar -> nestedJarHash(fatJar, nestedJar)));
+
+            List<ZipEntry> uncachedNestedJars = new ArrayList<>();
+            this.report.time("cacheLookup", () -> nestedJars.forEach(nestedJar -> {
+                Optional<Set<String>> cachedJavaModules = this.cache.get(nestedJarHashes.get(nestedJar));
+                if (cachedJavaModules.isPresent()) {
+                    javaModules.addAll(cachedJavaModules.get());
+                } else {
+                    uncachedNestedJars.add(nestedJar);
+                }
+            }));
+
+            Map<ZipEntry, Set<String>> analysedJavaModules = this.report.time("bytecodeAnalysis", () ->
+                    Parallel.map(uncachedNestedJars, nestedJar -> this.javaModulesOfNestedJar(fatJar, nestedJar)));
+            analysedJavaModules.forEach((nestedJar, nestedJavaModules) -> {
+                this.cache.put(nestedJarHashes.get(nestedJar), nestedJavaModules);
+                javaModules.addAll(nestedJavaModules);
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read " + fatJarPath, e);
+        }
+        return javaModules;
+    }
+
+    private Set<String> javaModulesOfNestedJar(@Nonnull ZipFile fatJar, @Nonnull ZipEntry nestedJar) {
+        try (InputStream nestedJarStream = fatJar.getInputStream(nestedJar)) {
+            return this.bytecodeAnalyzer.javaModulesOfJar(nestedJarStream, nestedJar.getName() + " in " + fatJar.getName());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read " + nestedJar.getName() + " in " + fatJar.getName(), e);
+        }
+    }
+
+    private static String nestedJarHash(@Nonnull ZipFile fatJar, @Nonnull ZipEntry nestedJar) {
+        try (InputStream nestedJarStream = fatJar.getInputStream(nestedJar)) {
+            return Hashes.sha256(nestedJarStream);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read " + nestedJar.getName() + " in " + fatJar.getName(), e);
+        }
+    }
+
+    private static List<ZipEntry> nestedJarEntries(@Nonnull ZipFile jarFile) {
+        return jarFile.stream()
+                .filter(entry -> !entry.isDirectory() && entry.getName().endsWith(".jar"))
+                .collect(Collectors.toList());
+    }
+}
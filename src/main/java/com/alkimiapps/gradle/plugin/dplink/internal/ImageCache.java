@@ -0,0 +1,106 @@
+package com.alkimiapps.gradle.plugin.dplink.internal;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.stream.Stream;
+import javax.annotation.Nonnull;
+
+import com.alkimiapps.javatools.FileUtils;
+
+/**
+ * A cache of jre images created by jlink that can be shared by all the builds on a machine.
+ * <p>
+ * Many apps need exactly the same set of java modules so, rather than run jlink for each of them, an image is linked
+ * once and then reused. Images are keyed by a hash of everything that determines what jlink creates i.e. the java
+ * modules, the jlink options and the releases of the JDKs. Images are restored by hard linking their files from the
+ * cache where possible (i.e. when the cache and the output directory are on the same file store) and by copying them
+ * otherwise. Files restored by hard linking are shared with the cache and so must not be modified in place.
+ * <p>
+ * The cache also keeps the start up trace of the apps of an image (see {@link StartupTrace}), by the key of the image
+ * it was traced from, so that an image linked by the trace can be linked without tracing the apps again.
+ */
+class ImageCache {
+
+    private static final String STARTUP_TRACE_SUFFIX = ".trace";
+
+    private final CacheDirectory cacheDirectory;
+
+    /**
+     * @param directory the cache directory
+     * @param maxBytes the maximum total size of the cached images
+     */
+    ImageCache(@Nonnull Path directory, long maxBytes) {
+        this.cacheDirectory = new CacheDirectory(directory, maxBytes, ImageCache::size);
+    }
+
+    /**
+     * Restore a cached image.
+     *
+     * @param key the image key
+     * @param outputDir where to put the image, this must not exist
+     * @return true if the image was restored, false if there's no such image in the cache
+     */
+    boolean restore(@Nonnull String key, @Nonnull Path outputDir) {
+        Optional<Path> cachedImage = this.cacheDirectory.get(key);
+        if (!cachedImage.isPresent()) {
+            return false;
+        }
+        try {
+            FileUtils.syncDirectory(cachedImage.get(), outputDir, true);
+            return true;
+        } catch (IOException | UncheckedIOException e) {
+            // the image was evicted (by some other build) while it was being restored
+            try {
+                if (Files.exists(outputDir)) {
+                    FileUtils.forceDelete(outputDir.toFile());
+                }
+            } catch (IOException deleteException) {
+                throw new UncheckedIOException(deleteException);
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Add an image to the cache and evict the least recently used images beyond the maximum size.
+     *
+     * @param key the image key
+     * @param imageDir the image
+     */
+    void store(@Nonnull String key, @Nonnull Path imageDir) {
+        this.cacheDirectory.put(key, entry -> FileUtils.syncDirectory(imageDir, entry, true));
+        this.cacheDirectory.trim();
+    }
+
+    /**
+     * @param imageKey the key of the image the start up trace was traced from
+     * @return the directory of the cached start up trace, if there is one
+     */
+    Optional<Path> startupTrace(@Nonnull String imageKey) {
+        return this.cacheDirectory.get(imageKey + STARTUP_TRACE_SUFFIX);
+    }
+
+    /**
+     * @param imageKey the key of the image the start up trace was traced from
+     * @param traceDir the directory the start up trace was written to
+     */
+    void storeStartupTrace(@Nonnull String imageKey, @Nonnull Path traceDir) {
+        this.cacheDirectory.put(imageKey + STARTUP_TRACE_SUFFIX, entry -> {
+            Files.createDirectories(entry);
+            for (String fileName : StartupTrace.FILE_NAMES) {
+                Files.copy(traceDir.resolve(fileName), entry.resolve(fileName));
+            }
+        });
+    }
+
+    private static long size(@Nonnull Path image) {
+        try (Stream<Path> paths = Files.walk(image)) {
+            return paths.filter(Files::isRegularFile).mapToLong(path -> path.toFile().length()).sum();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+}
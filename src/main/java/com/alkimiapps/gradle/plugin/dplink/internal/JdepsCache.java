@@ -0,0 +1,111 @@
+package com.alkimiapps.gradle.plugin.dplink.internal;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import javax.annotation.Nonnull;
+
+/**
+ * A persistent cache of the java modules on which jars depend, so that jars which have not changed since some
+ * previous build don't need to be analysed again.
+ * <p>
+ * Entries are keyed by the content hash of a jar together with the release and build of the JDK doing the analysis
+ * (builds of the same release by different vendors may analyse a jar differently), and hold the names of the java
+ * modules on which the jar depends. The cache is looked up in the build folder first and then, if there is one, in a
+ * shared cache directory (e.g. one used by all the builds on a CI agent). Optionally the cache directories are fronted
+ * by the memory of the {@link AnalysisService}, which lasts as long as the gradle daemon.
+ */
+class JdepsCache {
+
+    private final String jdkRelease;
+    private final List<CacheDirectory> cacheDirectories = new ArrayList<>();
+    private final Optional<AnalysisService> analysisService;
+
+    /**
+     * @param jdkRelease the release and build of the JDK that analyses jars e.g. 9.0.4-4f1c2d3e4b5a
+     * @param buildCacheDir the cache directory within the build folder
+     * @param sharedCacheDir optional cache directory shared with other builds
+     * @param maxEntries the maximum number of entries in each of the cache directories
+     */
+    JdepsCache(@Nonnull String jdkRelease, @Nonnull Path buildCacheDir, @Nonnull Optional<Path> sharedCacheDir, long maxEntries) {
+        this(jdkRelease, buildCacheDir, sharedCacheDir, maxEntries, Optional.empty());
+    }
+
+    /**
+     * @param jdkRelease the release and build of the JDK that analyses jars e.g. 9.0.4-4f1c2d3e4b5a
+     * @param buildCacheDir the cache directory within the build folder
+     * @param sharedCacheDir optional cache directory shared with other builds
+     * @param maxEntries the maximum number of entries in each of the cache directories
+     * @param analysisService optional service whose memory is looked up before the cache directories
+     */
+    JdepsCache(@Nonnull String jdkRelease, @Nonnull Path buildCacheDir, @Nonnull Optional<Path> sharedCacheDir, long maxEntries,
+               @Nonnull Optional<AnalysisService> analysisService) {
+        this.jdkRelease = jdkRelease;
+        this.analysisService = analysisService;
+        this.cacheDirectories.add(new CacheDirectory(buildCacheDir, maxEntries, entry -> 1));
+        sharedCacheDir.ifPresent(dir -> this.cacheDirectories.add(new CacheDirectory(dir, maxEntries, entry -> 1)));
+    }
+
+    /**
+     * @param jarHash the content hash of a jar
+     * @return the java modules on which the jar depends or empty if the jar is not in the cache
+     */
+    Optional<Set<String>> get(@Nonnull String jarHash) {
+        String key = this.key(jarHash);
+        Optional<Set<String>> rememberedModules = this.analysisService.flatMap(service -> service.analysis(key));
+        if (rememberedModules.isPresent()) {
+            return rememberedModules;
+        }
+        for (int i = 0; i < this.cacheDirectories.size(); i++) {
+            Optional<Set<String>> modules = this.cacheDirectories.get(i).get(key).flatMap(JdepsCache::readModules);
+            if (modules.isPresent()) {
+                // promote an entry from the shared cache into the build cache(s) ahead of it
+                this.cacheDirectories.subList(0, i).forEach(cacheDirectory -> writeModules(cacheDirectory, key, modules.get()));
+                this.analysisService.ifPresent(service -> service.putAnalysis(key, modules.get()));
+                return modules;
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * @param jarHash the content hash of a jar
+     * @param modules the java modules on which the jar depends
+     */
+    void put(@Nonnull String jarHash, @Nonnull Set<String> modules) {
+        String key = this.key(jarHash);
+        this.analysisService.ifPresent(service -> service.putAnalysis(key, modules));
+        this.cacheDirectories.forEach(cacheDirectory -> writeModules(cacheDirectory, key, modules));
+    }
+
+    /**
+     * Evict the least recently used entries from each of the cache directories that exceed the maximum number of entries.
+     */
+    void trim() {
+        this.cacheDirectories.forEach(CacheDirectory::trim);
+    }
+
+    private String key(@Nonnull String jarHash) {
+        return jarHash + "-" + this.jdkRelease;
+    }
+
+    private static Optional<Set<String>> readModules(@Nonnull Path entry) {
+        try {
+            return Optional.of(new HashSet<>(Files.readAllLines(entry, StandardCharsets.UTF_8)));
+        } catch (IOException e) {
+            // evicted since it was looked up
+            return Optional.empty();
+        }
+    }
+
+    private static void writeModules(@Nonnull CacheDirectory cacheDirectory, @Nonnull String key, @Nonnull Set<String> modules) {
+        cacheDirectory.put(key, entry -> Files.write(entry, new TreeSet<>(modules), StandardCharsets.UTF_8));
+    }
+}
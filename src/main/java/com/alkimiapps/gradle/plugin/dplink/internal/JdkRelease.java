@@ -0,0 +1,73 @@
+package com.alkimiapps.gradle.plugin.dplink.internal;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.Properties;
+import javax.annotation.Nonnull;
+
+/**
+ * Identifies the release of a JDK installation (or of a jre image created by jlink).
+ */
+public class JdkRelease {
+
+    private static final String UNKNOWN_RELEASE = "unknown";
+
+    /**
+     * @param javaHome the JDK installation directory
+     * @return the JAVA_VERSION from the release file of the installation e.g. 9.0.4, or "unknown" if there is none
+     */
+    public static String of(@Nonnull Path javaHome) {
+        return releaseProperty(javaHome, "JAVA_VERSION");
+    }
+
+    /**
+     * @param javaHome the JDK installation directory (or image)
+     * @return the JAVA_VERSION, IMPLEMENTOR, IMPLEMENTOR_VERSION and JAVA_RUNTIME_VERSION of the installation, which
+     * tell apart builds of the same release by different vendors (e.g. Temurin and Zulu 17.0.9), or empty if it has no
+     * release file and so can't be told apart from any other installation
+     */
+    static Optional<String> build(@Nonnull Path javaHome) {
+        if (!Files.isRegularFile(javaHome.resolve("release"))) {
+            return Optional.empty();
+        }
+        return Optional.of(String.join(" ", releaseProperty(javaHome, "JAVA_VERSION"),
+                releaseProperty(javaHome, "IMPLEMENTOR"), releaseProperty(javaHome, "IMPLEMENTOR_VERSION"),
+                releaseProperty(javaHome, "JAVA_RUNTIME_VERSION")));
+    }
+
+    /**
+     * @param javaHome the JDK installation directory (or image)
+     * @return the OS, architecture and C library that the installation runs on e.g. Linux/x86_64/gnu
+     */
+    static String platform(@Nonnull Path javaHome) {
+        return String.join("/", releaseProperty(javaHome, "OS_NAME"), releaseProperty(javaHome, "OS_ARCH"),
+                releaseProperty(javaHome, "LIBC"));
+    }
+
+    /**
+     * @param release a JDK release e.g. 9.0.4 or 17
+     * @return the feature (major) version of the release e.g. 9 or 17, or 0 if it's unknown
+     */
+    static int feature(@Nonnull String release) {
+        String feature = release.replaceFirst("^1\\.", "").replaceFirst("[^0-9].*$", "");
+        return feature.isEmpty() ? 0 : Integer.parseInt(feature);
+    }
+
+    private static String releaseProperty(@Nonnull Path javaHome, @Nonnull String name) {
+        Path releaseFile = javaHome.resolve("release");
+        if (!Files.isRegularFile(releaseFile)) {
+            return UNKNOWN_RELEASE;
+        }
+        try (Reader releaseReader = Files.newBufferedReader(releaseFile, StandardCharsets.UTF_8)) {
+            Properties release = new Properties();
+            release.load(releaseReader);
+            return release.getProperty(name, UNKNOWN_RELEASE).replace("\"", "").trim();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
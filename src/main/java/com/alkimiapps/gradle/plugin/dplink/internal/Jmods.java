@@ -0,0 +1,61 @@
+package com.alkimiapps.gradle.plugin.dplink.internal;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.lang.module.ModuleDescriptor;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import javax.annotation.Nonnull;
+
+/**
+ * Reads the module declarations of the jmod files in a jmods directory (e.g. that of a modules home).
+ * <p>
+ * ModuleFinder.of ignores jmod files (only jlink can use them) so they are read here directly. A jmod file is a 4
+ * byte header followed by a zip file, in which the module declaration is classes/module-info.class.
+ */
+class Jmods {
+
+    private static final int HEADER_SIZE = 4;
+    private static final String MODULE_INFO = "classes/module-info.class";
+
+    /**
+     * @param jmodsDir a jmods directory
+     * @return the module declarations of all the jmod files in the directory
+     */
+    static List<ModuleDescriptor> descriptors(@Nonnull Path jmodsDir) {
+        try (Stream<Path> paths = Files.list(jmodsDir)) {
+            return paths.filter(path -> path.getFileName().toString().endsWith(".jmod"))
+                    .collect(Collectors.toList())
+                    .parallelStream()
+                    .map(Jmods::descriptor)
+                    .filter(Optional::isPresent)
+                    .map(Optional::get)
+                    .collect(Collectors.toList());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to list " + jmodsDir, e);
+        }
+    }
+
+    private static Optional<ModuleDescriptor> descriptor(@Nonnull Path jmod) {
+        try (InputStream inputStream = Files.newInputStream(jmod)) {
+            inputStream.readNBytes(new byte[HEADER_SIZE], 0, HEADER_SIZE);
+            ZipInputStream zipInputStream = new ZipInputStream(inputStream);
+            ZipEntry entry;
+            while ((entry = zipInputStream.getNextEntry()) != null) {
+                if (MODULE_INFO.equals(entry.getName())) {
+                    return Optional.of(ModuleDescriptor.read(zipInputStream));
+                }
+            }
+            return Optional.empty();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read " + jmod, e);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.alkimiapps.gradle.plugin.dplink.internal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import javax.annotation.Nonnull;
+
+import static com.alkimiapps.javatools.Sugar.fatalGuard;
+
+/**
+ * Presets of jlink options that trade off the size of an image against the start up time of the apps it runs.
+ * <p>
+ * Zip compressing the classes in an image (--compress=2) makes it smaller but then classes have to be decompressed
+ * as they are loaded, which slows every start up. Debug information is never needed at runtime in the images dplink
+ * creates so all the profiles strip it. Note that jlink pre-generates java.lang.invoke classes from a builtin list
+ * by default - those the app itself resolves can be generated instead with the jliClasses option, which runs the app
+ * to trace them, or passed with the raw jlink arg --generate-jli-classes=@filename.
+ * <p>
+ * None of the profiles de-duplicate legal notices: --dedup-legal-notices=error-if-not-same-content fails the link when
+ * modules ship notices that differ, and choosing a profile shouldn't break a link. It can be passed as a raw jlink arg.
+ */
+public enum LinkProfile {
+
+    /**
+     * The options dplink has always used.
+     */
+    LEGACY(Arrays.asList("--no-header-files", "--no-man-pages", "--compress=2"), false),
+
+    /**
+     * Fastest start up: nothing is compressed.
+     */
+    STARTUP(Arrays.asList("--no-header-files", "--no-man-pages", "--strip-debug", "--compress=0"), false),
+
+    /**
+     * Shared strings only, which costs little at start up but still makes the image quite a bit smaller.
+     */
+    BALANCED(Arrays.asList("--no-header-files", "--no-man-pages", "--strip-debug", "--compress=1"), false),
+
+    /**
+     * Smallest image: zip compressed and, unless an app script (which needs bin/java) is created, without the native
+     * commands.
+     */
+    SIZE(Arrays.asList("--no-header-files", "--no-man-pages", "--strip-debug", "--compress=2"), true);
+
+    private final List<String> jlinkOptions;
+    private final boolean stripNativeCommands;
+
+    LinkProfile(@Nonnull List<String> jlinkOptions, boolean stripNativeCommands) {
+        this.jlinkOptions = jlinkOptions;
+        this.stripNativeCommands = stripNativeCommands;
+    }
+
+    /**
+     * @param isAppImage true if the image will run an app via the app script i.e. the image needs bin/java
+     * @return the jlink options for this profile
+     */
+    public List<String> jlinkOptions(boolean isAppImage) {
+        List<String> jlinkOptions = new ArrayList<>(this.jlinkOptions);
+        if (this.stripNativeCommands && !isAppImage) {
+            jlinkOptions.add("--strip-native-commands");
+        }
+        return jlinkOptions;
+    }
+
+    /**
+     * @param name a profile name, case insensitive e.g. "startup"
+     * @return the profile with that name
+     */
+    public static LinkProfile named(@Nonnull String name) {
+        LinkProfile linkProfile = Arrays.stream(values())
+                .filter(profile -> profile.name().equals(name.toUpperCase(Locale.ROOT)))
+                .findFirst()
+                .orElse(null);
+        fatalGuard(linkProfile != null, "Unknown linkProfile " + name + ", expected one of startup, balanced, size or legacy");
+        return linkProfile;
+    }
+}
@@ -0,0 +1,15 @@
+package com.alkimiapps.gradle.plugin.dplink.internal;
+
+import java.nio.file.Path;
+import javax.annotation.Nonnull;
+
+import lombok.Data;
+
+/**
+ * A java installation to create an image from, e.g. a JDK for some other platform, and where to create the image.
+ */
+@Data
+public class LinkTarget {
+    private final @Nonnull Path modulesHome;
+    private final @Nonnull Path outputDir;
+}
@@ -0,0 +1,22 @@
+package com.alkimiapps.gradle.plugin.dplink.internal;
+
+/**
+ * How dplink uses a lock file of the java modules on which the app's jars depend, see {@link DplinkLock}.
+ */
+public enum LockMode {
+
+    /**
+     * Link the java modules in the lock file if it matches the jars, otherwise analyse the jars.
+     */
+    USE,
+
+    /**
+     * Link the java modules in the lock file, failing if there is no lock file or it doesn't match the jars.
+     */
+    VERIFY,
+
+    /**
+     * Analyse the jars and write the lock file, without linking an image.
+     */
+    WRITE
+}
@@ -0,0 +1,42 @@
+package com.alkimiapps.gradle.plugin.dplink.internal;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Function;
+import javax.annotation.Nonnull;
+
+/**
+ * Work done in parallel (e.g. analysing jars) that carries on past failures, so that all of them are reported at once
+ * rather than just the first.
+ */
+class Parallel {
+
+    /**
+     * Apply the specified function to each of the items in parallel on the common ForkJoinPool.
+     *
+     * @param items the items e.g. jars
+     * @param function the function e.g. one that analyses a jar, it must not return null
+     * @return the result of the function for each of the items
+     * @throws RuntimeException the failures of the function, once it has been applied to all the items (see
+     * {@link DplinkException#of})
+     */
+    static <T, R> Map<T, R> map(@Nonnull Collection<T> items, @Nonnull Function<T, R> function) {
+        Map<T, R> results = new ConcurrentHashMap<>();
+        Queue<RuntimeException> failures = new ConcurrentLinkedQueue<>();
+        items.parallelStream().forEach(item -> {
+            try {
+                results.put(item, function.apply(item));
+            } catch (RuntimeException e) {
+                failures.add(e);
+            }
+        });
+        if (!failures.isEmpty()) {
+            throw DplinkException.of(new ArrayList<>(failures));
+        }
+        return results;
+    }
+}
@@ -0,0 +1,115 @@
+package com.alkimiapps.gradle.plugin.dplink.internal;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.annotation.Nonnull;
+
+import com.alkimiapps.javatools.FileUtils;
+
+/**
+ * A directory that is built in a staging directory alongside it and then swapped into place, so that a build that
+ * fails part way through leaves the previous directory as it was.
+ * <p>
+ * The swap is two renames (the previous directory out of the way and then the staging directory into place) since a
+ * non empty directory can't be atomically replaced. The previous directory is then deleted on a background thread -
+ * deleting an image is tens of thousands of files. Anything left behind by a build that died (or by a background
+ * delete that didn't get to finish) is deleted the next time the directory is staged.
+ */
+class StagedDirectory implements AutoCloseable {
+
+    private static final String STAGING_INFIX = ".staging-";
+    private static final String PREVIOUS_INFIX = ".previous-";
+
+    private final Path directory;
+    private final Path stagingDirectory;
+    private boolean isCommitted;
+
+    /**
+     * @param directory the directory to build, it may or may not exist already
+     */
+    StagedDirectory(@Nonnull Path directory) {
+        this.directory = directory.toAbsolutePath().normalize();
+        this.stagingDirectory = this.sibling(STAGING_INFIX);
+        this.deleteLeftovers();
+    }
+
+    /**
+     * @return the staging directory to build into, this does not exist yet
+     */
+    Path path() {
+        return this.stagingDirectory;
+    }
+
+    /**
+     * Swap the staging directory into place and delete the previous directory in the background.
+     */
+    void commit() {
+        try {
+            Path previousDirectory = this.sibling(PREVIOUS_INFIX);
+            boolean hasPrevious = Files.exists(this.directory);
+            if (hasPrevious) {
+                Files.move(this.directory, previousDirectory, StandardCopyOption.ATOMIC_MOVE);
+            }
+            Files.move(this.stagingDirectory, this.directory, StandardCopyOption.ATOMIC_MOVE);
+            this.isCommitted = true;
+
+            if (hasPrevious) {
+                Thread deleteThread = new Thread(() -> deleteQuietly(previousDirectory),
+                        "dplink-delete-" + previousDirectory.getFileName());
+                deleteThread.setDaemon(true);
+                deleteThread.start();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Delete the staging directory unless it was committed.
+     */
+    @Override
+    public void close() {
+        if (!this.isCommitted) {
+            deleteQuietly(this.stagingDirectory);
+        }
+    }
+
+    private Path sibling(@Nonnull String infix) {
+        return this.directory.resolveSibling("." + this.directory.getFileName() + infix + UUID.randomUUID());
+    }
+
+    private void deleteLeftovers() {
+        Path parent = this.directory.getParent();
+        if (!Files.isDirectory(parent)) {
+            return;
+        }
+        String stagingPrefix = "." + this.directory.getFileName() + STAGING_INFIX;
+        String previousPrefix = "." + this.directory.getFileName() + PREVIOUS_INFIX;
+        List<Path> leftovers;
+        try (Stream<Path> paths = Files.list(parent)) {
+            leftovers = paths.filter(path -> path.getFileName().toString().startsWith(stagingPrefix) ||
+                    path.getFileName().toString().startsWith(previousPrefix))
+                    .collect(Collectors.toList());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        leftovers.forEach(StagedDirectory::deleteQuietly);
+    }
+
+    private static void deleteQuietly(@Nonnull Path path) {
+        try {
+            if (Files.exists(path)) {
+                FileUtils.forceDelete(path.toFile());
+            }
+        } catch (IOException e) {
+            // best effort, whatever is left is deleted next time
+        }
+    }
+}
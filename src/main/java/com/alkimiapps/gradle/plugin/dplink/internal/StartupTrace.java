@@ -0,0 +1,163 @@
+package com.alkimiapps.gradle.plugin.dplink.internal;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.annotation.Nonnull;
+
+/**
+ * What an app does from the modules of its image as it starts up, traced by a training run of the app, for jlink to
+ * link an image that suits the app:
+ * <ul>
+ * <li>the classes the app loads, in the order it loads them, traced with -Xlog:class+load (and with CDS off, since
+ * classes loaded from a CDS archive aren't traced by module). They're written as a class list (e.g.
+ * java/lang/Object), which is what jlink's --order-resources=@file expects, so that the classes loaded at start up
+ * are first in the image's lib/modules and are read from a few contiguous pages rather than from all over the file.</li>
+ * <li>the java.lang.invoke forms and species (e.g. for lambdas) the app resolves, traced with
+ * -Djava.lang.invoke.MethodHandle.TRACE_RESOLVE=true, which is what jlink's --generate-jli-classes=@file expects, so
+ * that the classes for them are generated at link time rather than spun as the app starts up.</li>
+ * </ul>
+ * The files start with a comment naming the image the app was traced from, so that a later link of the same image can
+ * use them without tracing the app again.
+ */
+class StartupTrace {
+
+    static final String CLASS_LIST_FILE_NAME = "classes.classlist";
+    static final String JLI_CLASSES_FILE_NAME = "jli-classes.txt";
+    static final List<String> FILE_NAMES = Arrays.asList(CLASS_LIST_FILE_NAME, JLI_CLASSES_FILE_NAME);
+
+    // e.g. "[0.012s][info][class,load] java.lang.Object source: jrt:/java.base", with or without the decorations
+    private static final Pattern CLASS_LOAD_PATTERN = Pattern.compile("^(?:\\[[^]]*\\])*\\s*(\\S+) source: jrt:/(\\S+)\\s*$");
+
+    // e.g. "[LF_RESOLVE] java.lang.invoke.DirectMethodHandle$Holder invokeStatic L7_L (success)"
+    private static final Pattern JLI_RESOLVE_PATTERN = Pattern.compile("^\\[(LF|SPECIES)_RESOLVE\\] .*$");
+
+    private final Set<String> classes = new LinkedHashSet<>();
+    private final Set<String> jliResolutions = new LinkedHashSet<>();
+
+    StartupTrace() {
+    }
+
+    private StartupTrace(@Nonnull List<String> classes, @Nonnull List<String> jliResolutions) {
+        this.classes.addAll(classes);
+        this.jliResolutions.addAll(jliResolutions);
+    }
+
+    /**
+     * @param traceFile a -Xlog:class+load trace of a run of the app, each class is added unless it was loaded before
+     */
+    void addClassLoads(@Nonnull Path traceFile) {
+        try (Stream<String> lines = Files.lines(traceFile, StandardCharsets.UTF_8)) {
+            lines.map(StartupTrace::traceClass).forEach(traceClass -> traceClass.ifPresent(this.classes::add));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read " + traceFile, e);
+        }
+    }
+
+    /**
+     * @param outputLine a line written by the app to its standard output, added if it's a java.lang.invoke resolution
+     */
+    synchronized void addOutputLine(@Nonnull String outputLine) {
+        if (JLI_RESOLVE_PATTERN.matcher(outputLine).matches()) {
+            this.jliResolutions.add(outputLine);
+        }
+    }
+
+    /**
+     * @return the classes loaded from the image's modules e.g. java/lang/Object, in the order they were first loaded
+     */
+    List<String> classes() {
+        return new ArrayList<>(this.classes);
+    }
+
+    /**
+     * @return the java.lang.invoke resolutions traced
+     */
+    List<String> jliResolutions() {
+        return new ArrayList<>(this.jliResolutions);
+    }
+
+    /**
+     * @param traceDir the directory to write the class list and the java.lang.invoke resolutions to
+     * @param imageKey the key of the image the app was traced from
+     */
+    void write(@Nonnull Path traceDir, @Nonnull String imageKey) {
+        try {
+            Files.createDirectories(traceDir);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        writeLines(traceDir.resolve(CLASS_LIST_FILE_NAME), imageKey, this.classes);
+        writeLines(traceDir.resolve(JLI_CLASSES_FILE_NAME), imageKey, this.jliResolutions);
+    }
+
+    /**
+     * @param traceDir a directory written by {@link #write}, which may not exist
+     * @param imageKey the key of an image
+     * @return the trace in the directory if the app was traced from the image
+     */
+    static Optional<StartupTrace> read(@Nonnull Path traceDir, @Nonnull String imageKey) {
+        Optional<List<String>> classes = readLines(traceDir.resolve(CLASS_LIST_FILE_NAME), imageKey);
+        Optional<List<String>> jliResolutions = readLines(traceDir.resolve(JLI_CLASSES_FILE_NAME), imageKey);
+        if (!classes.isPresent() || !jliResolutions.isPresent()) {
+            return Optional.empty();
+        }
+        return Optional.of(new StartupTrace(classes.get(), jliResolutions.get()));
+    }
+
+    /**
+     * @param traceLine a line of a -Xlog:class+load trace
+     * @return the class e.g. java/lang/Object, if it was loaded from one of the image's modules
+     */
+    static Optional<String> traceClass(@Nonnull String traceLine) {
+        Matcher classLoadMatcher = CLASS_LOAD_PATTERN.matcher(traceLine);
+        if (!classLoadMatcher.matches()) {
+            return Optional.empty();
+        }
+        return Optional.of(classLoadMatcher.group(1).replace('.', '/'));
+    }
+
+    private static void writeLines(@Nonnull Path file, @Nonnull String imageKey, @Nonnull Collection<String> lines) {
+        List<String> fileLines = new ArrayList<>();
+        // both jlink plugins ignore a line that starts with #
+        fileLines.add(header(imageKey));
+        fileLines.addAll(lines);
+        try {
+            Files.write(file, fileLines, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write " + file, e);
+        }
+    }
+
+    private static Optional<List<String>> readLines(@Nonnull Path file, @Nonnull String imageKey) {
+        if (!Files.isRegularFile(file)) {
+            return Optional.empty();
+        }
+        try {
+            List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+            if (lines.isEmpty() || !lines.get(0).equals(header(imageKey))) {
+                return Optional.empty();
+            }
+            return Optional.of(lines.stream().filter(line -> !line.startsWith("#")).collect(Collectors.toList()));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read " + file, e);
+        }
+    }
+
+    private static String header(@Nonnull String imageKey) {
+        return "# traced at start up from image " + imageKey;
+    }
+}
@@ -0,0 +1,286 @@
+package com.alkimiapps.gradle.plugin.dplink.internal;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.spi.ToolProvider;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import static com.alkimiapps.javatools.Sugar.ifThen;
+
+/**
+ * Runs the JDK tools (jdeps, jlink etc) and other commands needed by dplink.
+ * <p>
+ * When the tools are taken from the same JDK as the one running the build they are run in-process via
+ * {@link ToolProvider}, which saves a JVM start up per invocation. If javaHome is some other JDK, or the running JDK
+ * does not provide the tool, then the tool executable in javaHome/bin is run as a separate process instead.
+ * <p>
+ * The standard output and error of a separate process are drained while it runs, with each line of standard output
+ * passed on as soon as it's read. A process that runs for longer than the timeout, or whose invoking thread is
+ * interrupted (e.g. because the build was cancelled), is killed along with any processes it started. Tools run
+ * in-process can't be killed and so are not subject to the timeout, but an interrupted thread doesn't start another
+ * tool and the result of a tool that was running when its thread was interrupted is discarded, so a cancelled build
+ * stops once the tools already running in-process finish.
+ * <p>
+ * A permit is held while each tool runs, so that tool runners sharing the permits (e.g. those of all the dplink tasks
+ * in a daemon) don't run more tools at once than there are permits.
+ * <p>
+ * A tool that fails throws a {@link DplinkException} with the last lines the tool wrote.
+ */
+class ToolRunner {
+
+    // the number of trailing lines of tool output kept for reporting a failure
+    private static final int FAILURE_OUTPUT_LINES = 200;
+
+    private final Path javaHome;
+    private final boolean isVerbose;
+    private final long timeoutSeconds;
+    private final boolean isInProcess;
+    private final Semaphore toolPermits;
+
+    ToolRunner(@Nonnull Path javaHome, boolean isVerbose, long timeoutSeconds, @Nonnull Semaphore toolPermits) {
+        this.javaHome = javaHome;
+        this.isVerbose = isVerbose;
+        this.timeoutSeconds = timeoutSeconds;
+        this.isInProcess = isRunningJdk(javaHome);
+        this.toolPermits = toolPermits;
+    }
+
+    /**
+     * @return true if tools are run within the current JVM i.e. javaHome is the JDK running the build
+     */
+    boolean isInProcess() {
+        return this.isInProcess;
+    }
+
+    /**
+     * Run the named JDK tool (e.g. "jdeps") with the specified args.
+     *
+     * @param toolName the name of the tool i.e. as it's known to {@link ToolProvider} and in javaHome/bin
+     * @param args the tool args
+     * @param outputLineConsumer consumer of each line written by the tool to its standard output, may be null
+     */
+    void run(@Nonnull String toolName, @Nonnull List<String> args, @Nullable Consumer<String> outputLineConsumer) {
+        Optional<ToolProvider> toolProvider = this.isInProcess ? ToolProvider.findFirst(toolName) : Optional.empty();
+        if (!toolProvider.isPresent()) {
+            List<String> command = new ArrayList<>();
+            command.add(this.javaHome.resolve("bin").resolve(toolName).toString());
+            command.addAll(args);
+            this.exec(command.toArray(new String[0]), outputLineConsumer);
+            return;
+        }
+
+        ifThen(this.isVerbose, () -> System.out.println("Dplink: " + toolName + " " + String.join(" ", args) + " (in-process)"));
+
+        OutputLines outputLines = new OutputLines(outputLineConsumer);
+        OutputLines errorLines = new OutputLines(null);
+        int exitCode;
+        this.acquireToolPermit(toolName);
+        try (PrintWriter outputWriter = new PrintWriter(new LineWriter(outputLines));
+             PrintWriter errorWriter = new PrintWriter(new LineWriter(errorLines))) {
+            guardNotCancelled(toolName);
+            exitCode = toolProvider.get().run(outputWriter, errorWriter, args.toArray(new String[0]));
+        } finally {
+            this.toolPermits.release();
+        }
+        // the tool can't be stopped part way, but its result isn't used if the build was cancelled meanwhile
+        guardNotCancelled(toolName);
+
+        outputLines.rethrowConsumerFailure();
+        ifThen(exitCode != 0, () -> {
+            throw failure("Command failed with exit code " + exitCode + ": " + toolName + " " + String.join(" ", args),
+                    outputLines, errorLines);
+        });
+    }
+
+    /**
+     * Execute the specified command as a separate process.
+     *
+     * @param command the command and its args
+     * @param outputLineConsumer consumer of each line written by the command to its standard output, may be null
+     */
+    void exec(@Nonnull String[] command, @Nullable Consumer<String> outputLineConsumer) {
+        String commandString = String.join(" ", command);
+        ifThen(this.isVerbose, () -> System.out.println("Dplink: " + commandString));
+
+        OutputLines outputLines = new OutputLines(outputLineConsumer);
+        OutputLines errorLines = new OutputLines(null);
+        Process commandProcess;
+        this.acquireToolPermit(commandString);
+        try {
+            try {
+                commandProcess = new ProcessBuilder(command).start();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+
+            Thread outputDrainer = drain(commandProcess.getInputStream(), outputLines, commandProcess);
+            Thread errorDrainer = drain(commandProcess.getErrorStream(), errorLines, commandProcess);
+            try {
+                if (!commandProcess.waitFor(this.timeoutSeconds, TimeUnit.SECONDS)) {
+                    destroyProcessTree(commandProcess);
+                    throw new RuntimeException("Command timed out after " + this.timeoutSeconds + " seconds: " + commandString);
+                }
+                outputDrainer.join();
+                errorDrainer.join();
+            } catch (InterruptedException e) {
+                destroyProcessTree(commandProcess);
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Command cancelled: " + commandString, e);
+            }
+        } finally {
+            this.toolPermits.release();
+        }
+
+        outputLines.rethrowConsumerFailure();
+        ifThen(commandProcess.exitValue() != 0, () -> {
+            throw failure("Command failed with exit code " + commandProcess.exitValue() + ": " + commandString,
+                    outputLines, errorLines);
+        });
+    }
+
+    private static DplinkException failure(@Nonnull String message, @Nonnull OutputLines outputLines,
+                                           @Nonnull OutputLines errorLines) {
+        List<String> tail = outputLines.tail();
+        tail.addAll(errorLines.tail());
+        return new DplinkException(message, tail);
+    }
+
+    private static void guardNotCancelled(@Nonnull String tool) {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new RuntimeException("Command cancelled: " + tool);
+        }
+    }
+
+    private void acquireToolPermit(@Nonnull String tool) {
+        if (!this.toolPermits.tryAcquire()) {
+            ifThen(this.isVerbose, () -> System.out.println("Dplink: waiting for other tools to finish before " + tool));
+            try {
+                this.toolPermits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Cancelled waiting to run " + tool, e);
+            }
+        }
+    }
+
+    private static Thread drain(@Nonnull InputStream inputStream, @Nonnull OutputLines outputLines, @Nonnull Process process) {
+        Thread drainer = new Thread(() -> {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    outputLines.accept(line);
+                }
+            } catch (IOException e) {
+                // the stream is closed when the process is destroyed
+            }
+        }, "dplink-drain-" + process.pid());
+        drainer.setDaemon(true);
+        drainer.start();
+        return drainer;
+    }
+
+    private static void destroyProcessTree(@Nonnull Process process) {
+        process.descendants().forEach(ProcessHandle::destroyForcibly);
+        process.destroyForcibly();
+    }
+
+    private static boolean isRunningJdk(@Nonnull Path javaHome) {
+        try {
+            return javaHome.toRealPath().equals(Paths.get(System.getProperty("java.home")).toRealPath());
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * The lines of a tool's output: each line is passed on to the consumer (if there is one) and the last few are kept
+     * in case the tool fails.
+     */
+    private static class OutputLines {
+        private final Consumer<String> consumer;
+        private final Deque<String> tail = new ArrayDeque<>();
+        private final AtomicReference<RuntimeException> consumerFailure = new AtomicReference<>();
+
+        OutputLines(@Nullable Consumer<String> consumer) {
+            this.consumer = consumer;
+        }
+
+        synchronized void accept(@Nonnull String line) {
+            this.tail.addLast(line);
+            if (this.tail.size() > FAILURE_OUTPUT_LINES) {
+                this.tail.removeFirst();
+            }
+            if (this.consumer != null && this.consumerFailure.get() == null) {
+                try {
+                    this.consumer.accept(line);
+                } catch (RuntimeException e) {
+                    // keep draining so the process isn't blocked, the failure is rethrown once the process exits
+                    this.consumerFailure.set(e);
+                }
+            }
+        }
+
+        synchronized List<String> tail() {
+            return new ArrayList<>(this.tail);
+        }
+
+        void rethrowConsumerFailure() {
+            if (this.consumerFailure.get() != null) {
+                throw this.consumerFailure.get();
+            }
+        }
+    }
+
+    /**
+     * Splits the characters written by an in-process tool into lines.
+     */
+    private static class LineWriter extends Writer {
+        private final OutputLines outputLines;
+        private final StringBuilder line = new StringBuilder();
+
+        LineWriter(@Nonnull OutputLines outputLines) {
+            this.outputLines = outputLines;
+        }
+
+        @Override
+        public void write(@Nonnull char[] chars, int offset, int length) {
+            for (int i = offset; i < offset + length; i++) {
+                char c = chars[i];
+                if (c == '\n') {
+                    this.outputLines.accept(this.line.toString());
+                    this.line.setLength(0);
+                } else if (c != '\r') {
+                    this.line.append(c);
+                }
+            }
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+            if (this.line.length() > 0) {
+                this.outputLines.accept(this.line.toString());
+                this.line.setLength(0);
+            }
+        }
+    }
+}
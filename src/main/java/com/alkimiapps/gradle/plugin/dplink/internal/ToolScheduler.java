@@ -0,0 +1,119 @@
+package com.alkimiapps.gradle.plugin.dplink.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import javax.annotation.Nonnull;
+
+/**
+ * Schedules tool invocations (e.g. jdeps runs) on threads dedicated to dplink.
+ * <p>
+ * Tool invocations mostly block waiting on a tool, so they are not run on the common ForkJoinPool where they would
+ * tie up threads shared with everything else in the Gradle daemon. At most maxParallelTools invocations run at once.
+ * If virtual threads are requested and the JDK running the build supports them (i.e. JDK 21+) then each invocation
+ * runs on its own virtual thread, otherwise a fixed size pool of platform threads is used.
+ */
+class ToolScheduler implements AutoCloseable {
+
+    private final ExecutorService executorService;
+    private final Semaphore permits;
+
+    /**
+     * @param maxParallelTools the maximum number of tool invocations to run at once, 0 or less means the number of
+     *                         available processors
+     * @param virtualThreads true if tool invocations should run on virtual threads where the JDK supports them
+     */
+    ToolScheduler(int maxParallelTools, boolean virtualThreads) {
+        int parallelism = parallelism(maxParallelTools);
+        ExecutorService virtualThreadExecutor = virtualThreads ? newVirtualThreadPerTaskExecutor() : null;
+        this.executorService = virtualThreadExecutor != null ? virtualThreadExecutor :
+                Executors.newFixedThreadPool(parallelism, new ToolThreadFactory());
+        this.permits = new Semaphore(parallelism);
+    }
+
+    /**
+     * Apply the specified function to each of the items with the function invocations running in parallel. An
+     * invocation that fails doesn't stop the others, the failures of all of them are thrown together once they've all
+     * finished (see {@link DplinkException#of}).
+     *
+     * @param items the items
+     * @param function the function e.g. one that runs a tool for an item
+     * @return the results of the function invocations in the same order as the items
+     */
+    <T, R> List<R> map(@Nonnull List<T> items, @Nonnull Function<T, R> function) {
+        List<Future<R>> futures = new ArrayList<>();
+        for (T item : items) {
+            futures.add(this.executorService.submit(() -> {
+                this.permits.acquire();
+                try {
+                    return function.apply(item);
+                } finally {
+                    this.permits.release();
+                }
+            }));
+        }
+
+        List<R> results = new ArrayList<>();
+        List<RuntimeException> failures = new ArrayList<>();
+        try {
+            for (Future<R> future : futures) {
+                try {
+                    results.add(future.get());
+                } catch (ExecutionException e) {
+                    failures.add(e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() :
+                            new DplinkException(String.valueOf(e.getCause().getMessage()), e.getCause()));
+                }
+            }
+        } catch (InterruptedException e) {
+            // e.g. the build was cancelled
+            futures.forEach(future -> future.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+        if (!failures.isEmpty()) {
+            throw DplinkException.of(failures);
+        }
+        return results;
+    }
+
+    /**
+     * @param maxParallelTools the maximum number of tool invocations to run at once, 0 or less means the number of
+     *                         available processors
+     * @return the maximum number of tool invocations to run at once
+     */
+    static int parallelism(int maxParallelTools) {
+        return maxParallelTools > 0 ? maxParallelTools : Runtime.getRuntime().availableProcessors();
+    }
+
+    @Override
+    public void close() {
+        this.executorService.shutdownNow();
+    }
+
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            // looked up reflectively because the plugin is built for JDKs that predate virtual threads
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    private static class ToolThreadFactory implements ThreadFactory {
+        private final AtomicInteger threadCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(@Nonnull Runnable runnable) {
+            Thread thread = new Thread(runnable, "dplink-tool-" + this.threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
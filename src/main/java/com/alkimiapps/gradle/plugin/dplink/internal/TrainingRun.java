@@ -0,0 +1,99 @@
+package com.alkimiapps.gradle.plugin.dplink.internal;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import static com.alkimiapps.javatools.Strings.hasChars;
+
+/**
+ * A run of an app from a freshly created image, done at build time to record what the app does as it starts up (e.g.
+ * which classes it loads).
+ * <p>
+ * The app is run the same way as by the app script i.e. with the executable jar and then the app's other jars as the
+ * classpath (or from its module when the app is linked into the image), so that anything recorded about the classpath
+ * matches when the app is run by the script. Either the app's main class is run with the training args, or some other
+ * (training) main class in the app's jars is. Either way the app must exit by itself once it has done enough to be
+ * representative of its start up.
+ */
+class TrainingRun {
+
+    private final ToolRunner toolRunner;
+    private final Path imageDir;
+    private final String classpath;
+    private final List<String> command = new ArrayList<>();
+
+    /**
+     * @param toolRunner runs the app
+     * @param imageDir the image containing the app
+     * @param application the app's configuration
+     * @param executableJarName the name of the executable jar relative to the lib directory of the image
+     * @param classpathJarNames the names of the other jars relative to the lib directory of the image
+     * @param mainModule the module of the executable jar when the app is linked into the image
+     */
+    TrainingRun(@Nonnull ToolRunner toolRunner, @Nonnull Path imageDir, @Nonnull Application application,
+                @Nonnull String executableJarName, @Nonnull List<String> classpathJarNames,
+                @Nonnull Optional<String> mainModule) {
+        this.toolRunner = toolRunner;
+        this.imageDir = imageDir;
+        this.classpath = Stream.concat(Stream.of(executableJarName), classpathJarNames.stream())
+                .map(jarName -> imageDir.resolve("lib").resolve(jarName).toString())
+                .collect(Collectors.joining(":"));
+
+        this.command.addAll(splitArgs(application.getJvmArgs()));
+        Optional<String> trainingMainClass = application.getTrainingMainClass();
+        if (mainModule.isPresent()) {
+            String mainClass = trainingMainClass.orElse(application.getMainClassName());
+            this.command.addAll(Arrays.asList("-m", mainModule.get() + "/" + mainClass));
+            this.command.addAll(splitArgs(application.getTrainingArgs()));
+        } else {
+            String mainClass = trainingMainClass.orElse(application.getMainClassName());
+            this.command.addAll(Arrays.asList("-cp", this.classpath, mainClass));
+            this.command.addAll(splitArgs(application.getTrainingArgs()));
+        }
+    }
+
+    /**
+     * Run the app.
+     *
+     * @param jvmOptions JVM options, in addition to the app's jvmArgs, that make the JVM record things
+     */
+    void run(@Nonnull List<String> jvmOptions) {
+        this.run(jvmOptions, null);
+    }
+
+    /**
+     * Run the app.
+     *
+     * @param jvmOptions JVM options, in addition to the app's jvmArgs, that make the JVM record things
+     * @param outputLineConsumer consumer of each line written by the app to its standard output, may be null
+     */
+    void run(@Nonnull List<String> jvmOptions, @Nullable Consumer<String> outputLineConsumer) {
+        List<String> trainingCommand = new ArrayList<>();
+        trainingCommand.add(this.imageDir.resolve("bin/java").toString());
+        trainingCommand.addAll(jvmOptions);
+        trainingCommand.addAll(this.command);
+        this.toolRunner.exec(trainingCommand.toArray(new String[0]), outputLineConsumer);
+    }
+
+    /**
+     * @return the classpath of the app when it is run by the app script
+     */
+    String classpath() {
+        return this.classpath;
+    }
+
+    private static List<String> splitArgs(@Nonnull Optional<String> args) {
+        return args.filter(a -> hasChars(a.trim()))
+                .map(a -> Arrays.asList(a.trim().split("\\s+")))
+                .orElse(Collections.emptyList());
+    }
+}
@@ -18,9 +18,21 @@ package com.alkimiapps.javatools;
 
 import java.io.*;
 import java.nio.channels.FileChannel;
+import java.nio.file.FileStore;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFileAttributeView;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  *
@@ -61,6 +73,11 @@ public class FileUtils {
      */
     public static final long ONE_MB = ONE_KB * ONE_KB;
 
+    /**
+     * The maximum number of threads that synchronise files at once.
+     */
+    private static final int MAX_SYNC_THREADS = 8;
+
     /**
      * Copies a whole directory to a new location preserving the file dates.
      * <p>
@@ -190,6 +207,90 @@ public class FileUtils {
         }
         doCopyDirectory(srcDir, destDir, filter, preserveFileDate, exclusionList);
     }
+    /**
+     * Synchronises a directory into a new location, the files are copied (or linked) in parallel on a bounded number of
+     * threads of their own (not the common ForkJoinPool, since they mostly block on IO).
+     * <p>
+     * NOTE: this is not from org.apache.commons.io.FileUtils.
+     * <p>
+     * The destination directory is created if it does not exist. If the destination directory did exist, then this
+     * method merges the source with the destination, with the source taking precedence. Files in the destination with
+     * the same size and last modified time as the source are assumed to be the same and are not copied again.
+     * <p>
+     * When <code>linkFiles</code> is {@code true} and the source and destination are on the same file store, files are
+     * hard linked rather than copied. Linked files share their content with the source so must not be modified in
+     * place afterwards (through either path). Otherwise files are copied with {@link FileChannel#transferTo}, along with
+     * their last modified time and (where the file system has them) their POSIX permissions, so e.g. executables stay
+     * executable.
+     *
+     * @param srcDir    an existing directory to synchronise, must not be {@code null}
+     * @param destDir   the new directory, must not be {@code null}
+     * @param linkFiles true if files may be hard linked rather than copied
+     * @return the number of bytes copied or linked i.e. excluding the files that were already the same
+     *
+     * @throws IOException if source or destination is invalid
+     * @throws IOException if an IO error occurs during copying
+     */
+    public static long syncDirectory(final Path srcDir, final Path destDir, final boolean linkFiles) throws IOException {
+        checkFileRequirements(srcDir.toFile(), destDir.toFile());
+        if (!Files.isDirectory(srcDir)) {
+            throw new IOException("Source '" + srcDir + "' exists but is not a directory");
+        }
+        Files.createDirectories(destDir);
+        final boolean isLinking = linkFiles &&
+                Files.getFileStore(srcDir).equals(Files.getFileStore(destDir));
+
+        final List<Path> srcFiles;
+        try (Stream<Path> paths = Files.walk(srcDir)) {
+            srcFiles = paths.filter(path -> !path.equals(srcDir)).collect(Collectors.toList());
+        }
+        // directories first (walk order is parents before children) so that the files can then be done in any order
+        for (final Path srcPath : srcFiles) {
+            if (Files.isDirectory(srcPath)) {
+                Files.createDirectories(destDir.resolve(srcDir.relativize(srcPath).toString()));
+            }
+        }
+
+        final List<Path> srcRegularFiles = srcFiles.stream()
+                .filter(srcPath -> !Files.isDirectory(srcPath))
+                .collect(Collectors.toList());
+        return syncInParallel(srcRegularFiles,
+                srcPath -> doSyncFile(srcPath, destDir.resolve(srcDir.relativize(srcPath).toString()), isLinking));
+    }
+
+    /**
+     * Synchronises files, which may be in different directories, into a directory, the files are copied (or linked)
+     * in parallel on a bounded number of threads of their own.
+     * <p>
+     * NOTE: this is not from org.apache.commons.io.FileUtils.
+     * <p>
+     * As for {@link #syncDirectory(Path, Path, boolean)} but each file is put in the destination directory under its
+     * file name, so the file names must be distinct. Whether a file can be linked is decided file by file since the
+     * files may be on different file stores.
+     *
+     * @param srcFiles  existing files to synchronise, must not be {@code null}
+     * @param destDir   the directory, must not be {@code null}
+     * @param linkFiles true if files may be hard linked rather than copied
+     * @return the number of bytes copied or linked i.e. excluding the files that were already the same
+     *
+     * @throws IOException if a source is not a file
+     * @throws IOException if an IO error occurs during copying
+     */
+    public static long syncFiles(final List<Path> srcFiles, final Path destDir, final boolean linkFiles) throws IOException {
+        for (final Path srcFile : srcFiles) {
+            if (!Files.isRegularFile(srcFile)) {
+                throw new IOException("Source '" + srcFile + "' does not exist or is not a file");
+            }
+        }
+        Files.createDirectories(destDir);
+        final FileStore destStore = Files.getFileStore(destDir);
+
+        return syncInParallel(srcFiles, srcPath -> {
+            final boolean isLinking = linkFiles && Files.getFileStore(srcPath).equals(destStore);
+            return doSyncFile(srcPath, destDir.resolve(srcPath.getFileName().toString()), isLinking);
+        });
+    }
+
     /**
      * Deletes a file. If file is a directory, delete it and all sub-directories.
      * <p>
@@ -385,6 +486,112 @@ public class FileUtils {
         }
     }
 
+    /**
+     * Internal method that syncs each file on a pool of at most {@link #MAX_SYNC_THREADS} threads, one that fails
+     * doesn't stop the others.
+     *
+     * @param srcFiles the validated source files, must not be {@code null}
+     * @param syncFile syncs a file and returns the number of bytes copied or linked
+     * @return the total number of bytes copied or linked
+     * @throws IOException the first failure, with any others suppressed
+     */
+    private static long syncInParallel(final List<Path> srcFiles, final SyncFile syncFile) throws IOException {
+        if (srcFiles.isEmpty()) {
+            return 0;
+        }
+        final AtomicInteger threadCount = new AtomicInteger();
+        final ExecutorService executorService = Executors.newFixedThreadPool(Math.min(srcFiles.size(), MAX_SYNC_THREADS),
+                runnable -> {
+                    final Thread thread = new Thread(runnable, "file-sync-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        try {
+            final List<Future<Long>> futures = new ArrayList<>(srcFiles.size());
+            for (final Path srcFile : srcFiles) {
+                futures.add(executorService.submit(() -> syncFile.sync(srcFile)));
+            }
+            long bytes = 0;
+            IOException failure = null;
+            for (final Future<Long> future : futures) {
+                try {
+                    bytes += future.get();
+                } catch (ExecutionException e) {
+                    final IOException cause = e.getCause() instanceof IOException ? (IOException) e.getCause() :
+                            new IOException(e.getCause());
+                    if (failure == null) {
+                        failure = cause;
+                    } else {
+                        failure.addSuppressed(cause);
+                    }
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            return bytes;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while synchronising files");
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    /**
+     * Syncs a file.
+     */
+    private interface SyncFile {
+        long sync(Path srcFile) throws IOException;
+    }
+
+    /**
+     * Internal sync file method.
+     *
+     * @param srcFile   the validated source file, must not be {@code null}
+     * @param destFile  the destination file, must not be {@code null}
+     * @param isLinking whether to hard link rather than copy the file
+     * @return the number of bytes copied or linked, 0 if the destination was already the same
+     * @throws IOException if an error occurs
+     */
+    private static long doSyncFile(final Path srcFile, final Path destFile, final boolean isLinking) throws IOException {
+        final long size = Files.size(srcFile);
+        final FileTime lastModified = Files.getLastModifiedTime(srcFile);
+        if (Files.isRegularFile(destFile) && Files.size(destFile) == size
+                && Files.getLastModifiedTime(destFile).equals(lastModified)) {
+            return 0;
+        }
+
+        Files.deleteIfExists(destFile);
+        if (isLinking) {
+            Files.createLink(destFile, srcFile);
+            return size;
+        }
+
+        try (FileChannel input = FileChannel.open(srcFile, StandardOpenOption.READ);
+             FileChannel output = FileChannel.open(destFile, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            long pos = 0;
+            while (pos < size) {
+                final long bytesCopied = input.transferTo(pos, size - pos, output);
+                if (bytesCopied == 0) { // IO-385 - can happen if file is truncated after caching the size
+                    break; // ensure we don't loop forever
+                }
+                pos += bytesCopied;
+            }
+        }
+        if (Files.size(destFile) != size) {
+            throw new IOException("Failed to copy full contents from '" +
+                    srcFile + "' to '" + destFile + "' Expected length: " + size + " Actual: " + Files.size(destFile));
+        }
+        // transferTo copies only the content, e.g. bin/java must stay executable
+        if (Files.getFileAttributeView(srcFile, PosixFileAttributeView.class) != null &&
+                Files.getFileAttributeView(destFile, PosixFileAttributeView.class) != null) {
+            Files.setPosixFilePermissions(destFile, Files.getPosixFilePermissions(srcFile));
+        }
+        Files.setLastModifiedTime(destFile, lastModified);
+        return size;
+    }
+
     /**
      * Internal copy file method.
      * This caches the original file length, and throws an IOException
@@ -0,0 +1,68 @@
+package com.alkimiapps.javatools;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Some content hashing utils.
+ */
+public class Hashes {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * @param file the file to hash
+     * @return the hex encoded SHA-256 hash of the content of the file
+     * @throws IOException if the file can't be read
+     */
+    public static String sha256(Path file) throws IOException {
+        try (InputStream inputStream = Files.newInputStream(file)) {
+            return sha256(inputStream);
+        }
+    }
+
+    /**
+     * @param inputStream the stream to hash, it is read to the end but not closed
+     * @return the hex encoded SHA-256 hash of the content of the stream
+     * @throws IOException if the stream can't be read
+     */
+    public static String sha256(InputStream inputStream) throws IOException {
+        MessageDigest digest = sha256Digest();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int count;
+        while ((count = inputStream.read(buffer)) > 0) {
+            digest.update(buffer, 0, count);
+        }
+        return hex(digest.digest());
+    }
+
+    /**
+     * @param s the string to hash
+     * @return the hex encoded SHA-256 hash of the UTF-8 bytes of the string
+     */
+    public static String sha256(String s) {
+        return hex(sha256Digest().digest(s.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static MessageDigest sha256Digest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // every java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+}
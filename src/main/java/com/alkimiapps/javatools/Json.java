@@ -0,0 +1,89 @@
+package com.alkimiapps.javatools;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Some JSON utils - just enough to write simple reports without a JSON library.
+ */
+public class Json {
+
+    /**
+     * @param value a Map (with String keys), Collection, CharSequence, Number, Boolean or null - nested to any depth
+     * @return the value as (pretty printed) JSON
+     */
+    public static String toJson(Object value) {
+        StringBuilder json = new StringBuilder();
+        append(json, value, "");
+        return json.toString();
+    }
+
+    private static void append(StringBuilder json, Object value, String indent) {
+        if (value == null) {
+            json.append("null");
+        } else if (value instanceof Number || value instanceof Boolean) {
+            json.append(value);
+        } else if (value instanceof Map) {
+            appendAll(json, ((Map<?, ?>) value).entrySet().iterator(), indent, '{', '}');
+        } else if (value instanceof Collection) {
+            appendAll(json, ((Collection<?>) value).iterator(), indent, '[', ']');
+        } else {
+            appendString(json, value.toString());
+        }
+    }
+
+    private static void appendAll(StringBuilder json, Iterator<?> values, String indent, char open, char close) {
+        json.append(open);
+        String innerIndent = indent + "  ";
+        boolean isEmpty = !values.hasNext();
+        while (values.hasNext()) {
+            Object value = values.next();
+            json.append('\n').append(innerIndent);
+            if (value instanceof Map.Entry) {
+                appendString(json, ((Map.Entry<?, ?>) value).getKey().toString());
+                json.append(": ");
+                append(json, ((Map.Entry<?, ?>) value).getValue(), innerIndent);
+            } else {
+                append(json, value, innerIndent);
+            }
+            if (values.hasNext()) {
+                json.append(',');
+            }
+        }
+        if (!isEmpty) {
+            json.append('\n').append(indent);
+        }
+        json.append(close);
+    }
+
+    private static void appendString(StringBuilder json, String string) {
+        json.append('"');
+        for (char c : string.toCharArray()) {
+            switch (c) {
+                case '"':
+                    json.append("\\\"");
+                    break;
+                case '\\':
+                    json.append("\\\\");
+                    break;
+                case '\n':
+                    json.append("\\n");
+                    break;
+                case '\r':
+                    json.append("\\r");
+                    break;
+                case '\t':
+                    json.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        json.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        json.append(c);
+                    }
+            }
+        }
+        json.append('"');
+    }
+}
@@ -9,9 +9,10 @@ import java.util.function.Supplier;
 public class Sugar {
     /**
      * Guard against a fatal condition. If the condition is false then the provided Runnable is executed followed
-     * by calling System.exit.
+     * by throwing a RuntimeException, unless the Runnable throws its own (which is the better way to describe the
+     * failure).
      *
-     * NOTE: not recommended for use in any application where it is not acceptable to exit the jvm.
+     * NOTE: this method never exits the jvm, so it's safe in long lived jvms e.g. the gradle daemon
      *
      * @param condition the condition against which to guard i.e. if it resolves to false then the runnable is executed
      * @param runnable runnable to execute if the condition fails
@@ -19,7 +20,7 @@ public class Sugar {
     public static void fatalGuard(boolean condition, Runnable runnable) {
         if (!condition) {
             runnable.run();
-            System.exit(-1);
+            throw new RuntimeException("Fatal guard failed");
         }
     }
 
@@ -0,0 +1,74 @@
+package com.alkimiapps.gradle.plugin.dplink;
+
+import com.alkimiapps.javatools.FileUtils;
+import org.gradle.testkit.runner.BuildResult;
+import org.gradle.testkit.runner.GradleRunner;
+import org.gradle.testkit.runner.TaskOutcome;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+
+class GradleDplinkTaskTest {
+
+    private final Path projectDir = Paths.get("/tmp/dplink-task-test");
+    private final Path mainClass = projectDir.resolve("src/main/java/demo/Main.java");
+
+    @BeforeEach
+    void setUpProject() throws IOException {
+        if (Files.exists(projectDir)) {
+            FileUtils.forceDelete(projectDir.toFile());
+        }
+        Files.createDirectories(mainClass.getParent());
+        write(projectDir.resolve("settings.gradle"), "rootProject.name = 'demo'");
+        write(projectDir.resolve("build.gradle"),
+                "plugins { id 'java'; id 'com.alkimiapps.gradle-dplink-plugin' }",
+                "dplink { mainClassName = 'demo.Main'; imageCache = false }");
+        writeMainClass("System.out.println(\"hello\");");
+    }
+
+    @Test
+    void testUpToDateUntilAnInputOrOutputChanges() throws IOException {
+        assertEquals(TaskOutcome.SUCCESS, dplink());
+        assertEquals(TaskOutcome.UP_TO_DATE, dplink());
+
+        // the image
+        FileUtils.forceDelete(projectDir.resolve("build/app/lib").toFile());
+        assertEquals(TaskOutcome.SUCCESS, dplink());
+
+        // the report
+        Files.delete(projectDir.resolve("build/reports/dplink/dplink.json"));
+        assertEquals(TaskOutcome.SUCCESS, dplink());
+
+        // the app's jar
+        writeMainClass("System.out.println(java.sql.Types.class);");
+        assertEquals(TaskOutcome.SUCCESS, dplink());
+        assertEquals(TaskOutcome.UP_TO_DATE, dplink());
+    }
+
+    private TaskOutcome dplink() {
+        BuildResult result = GradleRunner.create()
+                .withProjectDir(projectDir.toFile())
+                .withPluginClasspath()
+                .withArguments("dplink", "--stacktrace")
+                .build();
+        return result.task(":dplink").getOutcome();
+    }
+
+    private void writeMainClass(String statement) throws IOException {
+        write(mainClass, "package demo;",
+                "public class Main { public static void main(String[] args) { " + statement + " } }");
+    }
+
+    private static void write(Path file, String... lines) throws IOException {
+        Files.write(file, Arrays.asList(lines), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,136 @@
+package com.alkimiapps.gradle.plugin.dplink;
+
+import com.alkimiapps.javatools.FileUtils;
+import org.gradle.api.Project;
+import org.gradle.tooling.BuildCancelledException;
+import org.gradle.tooling.CancellationTokenSource;
+import org.gradle.tooling.GradleConnectionException;
+import org.gradle.tooling.GradleConnector;
+import org.gradle.tooling.ProjectConnection;
+import org.gradle.tooling.ResultHandler;
+import org.gradle.util.GradleVersion;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Cancels a dplinkWatch build the way ctrl-c does, through the tooling API that TestKit runs builds with (TestKit
+ * itself can't cancel a build).
+ */
+class GradleDplinkWatchTaskTest {
+
+    private final Path projectDir = Paths.get("/tmp/dplink-watch-task-test");
+
+    @BeforeEach
+    void setUpProject() throws IOException {
+        if (Files.exists(projectDir)) {
+            FileUtils.forceDelete(projectDir.toFile());
+        }
+        Path mainClass = projectDir.resolve("src/main/java/demo/Main.java");
+        Files.createDirectories(mainClass.getParent());
+        write(projectDir.resolve("settings.gradle"), "rootProject.name = 'demo'");
+        write(projectDir.resolve("build.gradle"),
+                "buildscript { dependencies { classpath files(" + pluginClasspath() + ") } }",
+                "apply plugin: 'java'",
+                "apply plugin: com.alkimiapps.gradle.plugin.dplink.GradleDplinkPlugin",
+                "dplink { mainClassName = 'demo.Main'; imageCache = false }",
+                "tasks.create('pid') { doLast { println 'daemon ' + ProcessHandle.current().pid() } }");
+        write(mainClass, "package demo;",
+                "public class Main { public static void main(String[] args) { System.out.println(\"hello\"); } }");
+    }
+
+    @Test
+    void testCancelledWatchStopsAndKeepsTheDaemon() throws Exception {
+        try (ProjectConnection connection = connector().connect()) {
+            String daemon = daemon(connection);
+
+            CancellationTokenSource cancellationTokenSource = GradleConnector.newCancellationTokenSource();
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            CompletableFuture<GradleConnectionException> failure = new CompletableFuture<>();
+            connection.newBuild()
+                    .forTasks("dplinkWatch")
+                    .setStandardOutput(output)
+                    .withCancellationToken(cancellationTokenSource.token())
+                    .run(new ResultHandler<Void>() {
+                        @Override
+                        public void onComplete(Void result) {
+                            failure.complete(null);
+                        }
+
+                        @Override
+                        public void onFailure(GradleConnectionException e) {
+                            failure.complete(e);
+                        }
+                    });
+            for (int i = 0; i < 1200 && !output.toString("UTF-8").contains("Dplink: watching"); i++) {
+                Thread.sleep(100);
+            }
+            assertTrue(output.toString("UTF-8").contains("Dplink: watching"), output.toString("UTF-8"));
+
+            cancellationTokenSource.cancel();
+            // well within the time gradle gives a cancelled build before it stops the daemon
+            GradleConnectionException buildFailure = failure.get(5, TimeUnit.SECONDS);
+            assertNotNull(buildFailure);
+            assertTrue(buildFailure instanceof BuildCancelledException, buildFailure.toString());
+
+            // the daemon, and whatever dplink keeps in it, is still there
+            assertEquals(daemon, daemon(connection));
+        }
+    }
+
+    private static String daemon(ProjectConnection connection) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        connection.newBuild().forTasks("pid").setStandardOutput(output).run();
+        return Arrays.stream(output.toString("UTF-8").split("\\R"))
+                .filter(line -> line.startsWith("daemon "))
+                .findFirst()
+                .orElseThrow(() -> new AssertionError("No daemon pid in " + output));
+    }
+
+    private GradleConnector connector() throws Exception {
+        GradleConnector connector = GradleConnector.newConnector().forProjectDirectory(projectDir.toFile());
+        // the gradle running the tests, as TestKit uses, if it's an installation rather than generated api jars
+        Path gradleHome = Paths.get(Project.class.getProtectionDomain().getCodeSource().getLocation().toURI())
+                .getParent().getParent();
+        if (Files.isDirectory(gradleHome.resolve("lib/plugins"))) {
+            connector.useInstallation(gradleHome.toFile());
+        } else {
+            connector.useGradleVersion(GradleVersion.current().getVersion());
+        }
+        return connector;
+    }
+
+    /**
+     * @return the plugin's classpath as written by the java-gradle-plugin for TestKit, as groovy strings
+     */
+    private static String pluginClasspath() throws IOException {
+        Properties metadata = new Properties();
+        try (InputStream metadataStream = GradleDplinkWatchTaskTest.class.getClassLoader()
+                .getResourceAsStream("plugin-under-test-metadata.properties")) {
+            metadata.load(metadataStream);
+        }
+        return Arrays.stream(metadata.getProperty("implementation-classpath").split(java.io.File.pathSeparator))
+                .map(path -> "'" + path.replace("\\", "/") + "'")
+                .collect(Collectors.joining(", "));
+    }
+
+    private static void write(Path file, String... lines) throws IOException {
+        Files.write(file, Arrays.asList(lines), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,94 @@
+package com.alkimiapps.gradle.plugin.dplink.internal;
+
+import com.alkimiapps.javatools.FileUtils;
+import com.alkimiapps.javatools.Hashes;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static java.util.Optional.empty;
+import static java.util.Optional.of;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+class AnalysisServiceTest {
+
+    private final Path testDir = Paths.get("/tmp/dplink-analysis-service-test");
+    private final Path buildCacheDir = testDir.resolve("build-cache");
+    private final Set<String> modules = new HashSet<>(Arrays.asList("java.base", "java.sql"));
+
+    @BeforeEach
+    void cleanUp() throws IOException {
+        if (Files.exists(testDir)) {
+            FileUtils.forceDelete(testDir.toFile());
+        }
+        Files.createDirectories(testDir);
+    }
+
+    @Test
+    void testAnalysesOutliveTheCacheDirectory() throws IOException {
+        AnalysisService analysisService = new AnalysisService(1);
+        new JdepsCache("9.0.4", buildCacheDir, empty(), 10, of(analysisService)).put("abc", modules);
+
+        FileUtils.forceDelete(buildCacheDir.toFile());
+
+        assertEquals(of(modules), new JdepsCache("9.0.4", buildCacheDir, empty(), 10, of(analysisService)).get("abc"));
+        assertFalse(new JdepsCache("10", buildCacheDir, empty(), 10, of(analysisService)).get("abc").isPresent());
+        assertFalse(new JdepsCache("9.0.4", buildCacheDir, empty(), 10).get("abc").isPresent());
+    }
+
+    @Test
+    void testJarIsHashedAgainOnlyWhenChanged() throws IOException {
+        AnalysisService analysisService = new AnalysisService(1);
+        Path jarPath = testDir.resolve("test.jar");
+        Files.write(jarPath, "one".getBytes());
+        FileTime lastModified = Files.getLastModifiedTime(jarPath);
+
+        String hash = analysisService.jarHash(jarPath);
+        assertEquals(Hashes.sha256(jarPath), hash);
+
+        // same size and last modified time so taken to be the same
+        Files.write(jarPath, "two".getBytes());
+        Files.setLastModifiedTime(jarPath, lastModified);
+        assertSame(hash, analysisService.jarHash(jarPath));
+
+        Files.setLastModifiedTime(jarPath, FileTime.fromMillis(lastModified.toMillis() + 1000));
+        assertEquals(Hashes.sha256(jarPath), analysisService.jarHash(jarPath));
+    }
+
+    @Test
+    void testModuleCatalogIsShared() {
+        AnalysisService analysisService = new AnalysisService(1);
+        Path modulesHome = Paths.get(System.getProperty("java.home"));
+
+        assertSame(analysisService.bytecodeAnalyzer(modulesHome), analysisService.bytecodeAnalyzer(modulesHome));
+    }
+
+    @Test
+    void testModuleCatalogOfJdkWithoutReleaseFile() throws IOException {
+        AnalysisService analysisService = new AnalysisService(1);
+        Path modulesHome = testDir.resolve("jdk");
+        Files.createDirectories(modulesHome);
+        Files.createSymbolicLink(modulesHome.resolve("jmods"), Paths.get(System.getProperty("java.home"), "jmods"));
+
+        assertSame(analysisService.bytecodeAnalyzer(modulesHome), analysisService.bytecodeAnalyzer(modulesHome));
+    }
+
+    @Test
+    void testToolPermitsAreRaisedToTheLargestLimit() {
+        AnalysisService analysisService = new AnalysisService(0);
+
+        assertEquals(64, analysisService.toolPermits(64).availablePermits());
+        // a task with a lower limit is bounded by its own scheduler
+        assertEquals(64, analysisService.toolPermits(8).availablePermits());
+    }
+}
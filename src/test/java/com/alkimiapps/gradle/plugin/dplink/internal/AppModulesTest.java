@@ -0,0 +1,88 @@
+package com.alkimiapps.gradle.plugin.dplink.internal;
+
+import com.alkimiapps.javatools.FileUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.module.ModuleDescriptor;
+import java.lang.module.ModuleFinder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.concurrent.Semaphore;
+
+class AppModulesTest {
+
+    private final Path testDir = Paths.get("/tmp/dplink-app-modules-test");
+    private final Path javaHome = Paths.get(System.getProperty("java.home"));
+    private final ToolRunner toolRunner = new ToolRunner(javaHome, false, 60, new Semaphore(2));
+
+    @BeforeEach
+    void cleanUp() throws IOException {
+        if (Files.exists(testDir)) {
+            FileUtils.forceDelete(testDir.toFile());
+        }
+        Files.createDirectories(testDir);
+    }
+
+    @Test
+    void testAutomaticModuleIsMadeExplicit() throws IOException {
+        Path jarPath = TestJars.writeJar(testDir.resolve("sql-lib.jar"), TestJars.UsesJavaSql.class);
+
+        AppModules appModules = appModules("first");
+        appModules.create(Collections.singletonList(jarPath), JdkRelease.of(javaHome));
+
+        assertEquals(Collections.singletonList("sql.lib"), appModules.moduleNames());
+        assertEquals("sql.lib", appModules.moduleName("sql-lib.jar"));
+        ModuleDescriptor descriptor = modularJar(appModules, "sql-lib.jar");
+        assertFalse(descriptor.isAutomatic());
+        assertTrue(descriptor.requires().stream().anyMatch(requires -> requires.name().equals("java.sql")));
+        assertTrue(descriptor.exports().stream().anyMatch(exports ->
+                exports.source().equals(TestJars.UsesJavaSql.class.getPackage().getName())));
+        // the lib itself is left alone
+        assertTrue(ModuleFinder.of(jarPath).find("sql.lib").get().descriptor().isAutomatic());
+    }
+
+    @Test
+    void testExplicitModuleIsUsedAsItIs() throws IOException {
+        Path jarPath = TestJars.writeJar(testDir.resolve("sql-lib.jar"), TestJars.UsesJavaSql.class);
+        AppModules appModules = appModules("first");
+        appModules.create(Collections.singletonList(jarPath), JdkRelease.of(javaHome));
+        Path explicitJarPath = testDir.resolve("explicit-sql-lib.jar");
+        Files.copy(modularJarPath(appModules, "sql-lib.jar"), explicitJarPath);
+
+        AppModules explicitAppModules = appModules("second");
+        explicitAppModules.create(Collections.singletonList(explicitJarPath), JdkRelease.of(javaHome));
+
+        assertEquals("sql.lib", explicitAppModules.moduleName("explicit-sql-lib.jar"));
+        assertEquals(Files.size(explicitJarPath), Files.size(modularJarPath(explicitAppModules, "explicit-sql-lib.jar")));
+    }
+
+    private AppModules appModules(String workDirName) {
+        return new AppModules(toolRunner, new ToolScheduler(2, false), testDir.resolve(workDirName));
+    }
+
+    private static ModuleDescriptor modularJar(AppModules appModules, String jarName) {
+        return ModuleFinder.of(modularJarPath(appModules, jarName)).findAll().iterator().next().descriptor();
+    }
+
+    /**
+     * @return the modular jar of the jar, on the module path of the app modules
+     */
+    private static Path modularJarPath(AppModules appModules, String jarName) {
+        for (String moduleDir : appModules.modulePath().split(File.pathSeparator)) {
+            Path modularJarPath = Paths.get(moduleDir).resolve(jarName);
+            if (Files.exists(modularJarPath)) {
+                return modularJarPath;
+            }
+        }
+        throw new AssertionError("No modular jar of " + jarName);
+    }
+}
@@ -0,0 +1,60 @@
+package com.alkimiapps.gradle.plugin.dplink.internal;
+
+import com.alkimiapps.javatools.FileUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.logging.Logger;
+
+class BytecodeAnalyzerTest {
+
+    private final Path testDir = Paths.get("/tmp/dplink-bytecode-test");
+    private final BytecodeAnalyzer bytecodeAnalyzer = new BytecodeAnalyzer(Paths.get(System.getProperty("java.home")));
+
+    @BeforeEach
+    void cleanUp() throws IOException {
+        if (Files.exists(testDir)) {
+            FileUtils.forceDelete(testDir.toFile());
+        }
+        Files.createDirectories(testDir);
+    }
+
+    @Test
+    void testJavaModulesOfJar() throws IOException {
+        Path jarPath = jarOf(UsesJavaSqlAndLogging.class);
+
+        assertEquals(new HashSet<>(Arrays.asList("java.base", "java.logging", "java.sql")),
+                bytecodeAnalyzer.javaModulesOfJar(jarPath));
+    }
+
+    @Test
+    void testJavaModulesOfDescriptorOnlyTypes() throws IOException {
+        // java.sql is only referred to by a method descriptor
+        Path jarPath = jarOf(DescribesJavaSql.class);
+
+        assertEquals(new HashSet<>(Arrays.asList("java.base", "java.sql")), bytecodeAnalyzer.javaModulesOfJar(jarPath));
+    }
+
+    private Path jarOf(Class<?> testClass) throws IOException {
+        return TestJars.writeJar(testDir.resolve(testClass.getSimpleName() + ".jar"), testClass);
+    }
+
+    static class UsesJavaSqlAndLogging {
+        void log(Connection connection) throws Exception {
+            Logger.getLogger("test").info(connection.getCatalog());
+        }
+    }
+
+    static abstract class DescribesJavaSql {
+        abstract Object[] catalogs(Connection[] connections);
+    }
+}
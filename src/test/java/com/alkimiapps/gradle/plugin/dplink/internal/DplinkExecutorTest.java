@@ -1,10 +1,12 @@
 package com.alkimiapps.gradle.plugin.dplink.internal;
 
 import com.alkimiapps.javatools.FileUtils;
+import com.alkimiapps.javatools.Hashes;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import static java.util.Optional.of;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
@@ -13,9 +15,14 @@ import java.io.File;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.stream.Stream;
 
 class DplinkExecutorTest {
 
@@ -123,6 +130,306 @@ class DplinkExecutorTest {
         assertFalse(Files.exists(outputDir.resolve("bin/app")));
     }
 
+    @Test
+    void testDplinkWithMultipleApplications() throws Exception {
+        Path baseJar = libsPath.resolve("base.jar");
+        Path sqlJar = libsPath.resolve("sql.jar");
+        TestJars.writeJar(baseJar, TestJars.UsesJavaBase.class);
+        TestJars.writeJar(sqlJar, TestJars.UsesJavaSql.class);
+        dplinkConfig.setAnalysisMode(AnalysisMode.BYTECODE);
+        dplinkConfig.setApplications(Arrays.asList(
+                new Application("base", TestJars.UsesJavaBase.class.getName(), Optional.empty(), Optional.empty(),
+                        Optional.empty(), Optional.empty(), Optional.empty(), Collections.singletonList(baseJar)),
+                new Application("sql", TestJars.UsesJavaSql.class.getName(), Optional.empty(), Optional.empty(),
+                        Optional.empty(), Optional.empty(), Optional.empty(), Collections.singletonList(sqlJar))));
+
+        new DplinkExecutor().dplink(dplinkConfig);
+
+        // one runtime with the java modules of both apps, and a launcher and lib directory for each
+        assertTrue(new String(Files.readAllBytes(outputDir.resolve("release")), StandardCharsets.UTF_8).contains("java.sql"));
+        assertTrue(Files.exists(outputDir.resolve("bin/base")));
+        assertTrue(Files.exists(outputDir.resolve("bin/sql")));
+        assertTrue(Files.exists(outputDir.resolve("lib/base/base.jar")));
+        assertTrue(Files.exists(outputDir.resolve("lib/sql/sql.jar")));
+        assertFalse(Files.exists(outputDir.resolve("lib/base/sql.jar")));
+        assertTrue(new String(Files.readAllBytes(outputDir.resolve("bin/sql")), StandardCharsets.UTF_8).contains("lib/sql/sql.jar"));
+    }
+
+    @Test
+    void testJdepsBatchOfApplicationsWithSameNamedJars() throws Exception {
+        // each application has its own lib.jar
+        Path sqlJar = buildDir.resolve("sql/lib.jar");
+        Path baseJar = buildDir.resolve("base/lib.jar");
+        Files.createDirectories(sqlJar.getParent());
+        Files.createDirectories(baseJar.getParent());
+        TestJars.writeJar(sqlJar, TestJars.UsesJavaSql.class);
+        TestJars.writeJar(baseJar, TestJars.UsesJavaBase.class);
+        dplinkConfig.setJdepsBatchSize(0);
+        dplinkConfig.setApplications(Arrays.asList(
+                new Application("sql", TestJars.UsesJavaSql.class.getName(), Optional.empty(), Optional.empty(),
+                        Optional.empty(), Optional.empty(), Optional.empty(), Collections.singletonList(sqlJar)),
+                new Application("base", TestJars.UsesJavaBase.class.getName(), Optional.empty(), Optional.empty(),
+                        Optional.empty(), Optional.empty(), Optional.empty(), Collections.singletonList(baseJar))));
+
+        new DplinkExecutor().dplink(dplinkConfig);
+
+        // jdeps labels its summary by jar name, so the two are analysed in separate runs
+        String report = new String(Files.readAllBytes(dplinkConfig.reportFile()), StandardCharsets.UTF_8).replaceAll("\\s", "");
+        assertTrue(report.contains("\"jdeps\":{\"count\":2,"), report);
+        // and each jar's own java modules are cached for it
+        assertTrue(cachedJavaModules(sqlJar).contains("java.sql"), cachedJavaModules(sqlJar));
+        assertFalse(cachedJavaModules(baseJar).contains("java.sql"), cachedJavaModules(baseJar));
+    }
+
+    @Test
+    void testVerifyLockWithAllJavaModules() throws Exception {
+        TestJars.writeJar(libsPath.resolve("base.jar"), TestJars.UsesJavaBase.class);
+        dplinkConfig.setAllJavaModules(true);
+        dplinkConfig.setLockFile(of(buildDir.resolve("dplink.lock")));
+
+        dplinkConfig.setLockMode(LockMode.WRITE);
+        assertThrows(RuntimeException.class, () -> new DplinkExecutor().dplink(dplinkConfig));
+
+        // nothing is analysed so nothing can differ from a lock
+        dplinkConfig.setLockMode(LockMode.VERIFY);
+        new DplinkExecutor().dplink(dplinkConfig);
+        assertTrue(Files.exists(outputDir.resolve("release")));
+    }
+
+    @Test
+    void testJdepsBatches() throws Exception {
+        TestJars.writeJar(libsPath.resolve("base.jar"), TestJars.UsesJavaBase.class);
+        TestJars.writeJar(libsPath.resolve("logging.jar"), TestJars.UsesJavaLogging.class);
+        TestJars.writeJar(libsPath.resolve("sql.jar"), TestJars.UsesJavaSql.class);
+        dplinkConfig.setJdepsBatchSize(2);
+
+        new DplinkExecutor().dplink(dplinkConfig);
+
+        String report = new String(Files.readAllBytes(dplinkConfig.reportFile()), StandardCharsets.UTF_8).replaceAll("\\s", "");
+        assertTrue(report.contains("\"jars\":[\"base.jar\",\"logging.jar\"]"), report);
+        assertTrue(report.contains("\"jars\":[\"sql.jar\"]"), report);
+        String release = new String(Files.readAllBytes(outputDir.resolve("release")), StandardCharsets.UTF_8);
+        assertTrue(release.contains("java.logging") && release.contains("java.sql"), release);
+    }
+
+    @Test
+    void testAllJarsInOneJdepsRun() throws Exception {
+        TestJars.writeJar(libsPath.resolve("base.jar"), TestJars.UsesJavaBase.class);
+        TestJars.writeJar(libsPath.resolve("sql.jar"), TestJars.UsesJavaSql.class);
+        dplinkConfig.setJdepsBatchSize(0);
+
+        new DplinkExecutor().dplink(dplinkConfig);
+
+        String report = new String(Files.readAllBytes(dplinkConfig.reportFile()), StandardCharsets.UTF_8).replaceAll("\\s", "");
+        assertTrue(report.contains("\"jdepsRuns\":[{\"jars\":[\"base.jar\",\"sql.jar\"]"), report);
+        assertTrue(report.contains("\"jdeps\":{\"count\":1,"), report);
+        assertTrue(new String(Files.readAllBytes(outputDir.resolve("release")), StandardCharsets.UTF_8).contains("java.sql"));
+    }
+
+    @Test
+    void testImageForEachTarget() throws Exception {
+        Path javaHome = Paths.get(System.getProperty("java.home"));
+        TestJars.writeJar(libsPath.resolve("sql.jar"), TestJars.UsesJavaSql.class);
+        dplinkConfig.setAnalysisMode(AnalysisMode.BYTECODE);
+        dplinkConfig.setMainClassName(of(TestJars.UsesJavaSql.class.getName()));
+        dplinkConfig.setExecutableJar(of("sql.jar"));
+        dplinkConfig.setTargets(Arrays.asList(new LinkTarget(javaHome, buildDir.resolve("app-first")),
+                new LinkTarget(javaHome, buildDir.resolve("app-second"))));
+
+        new DplinkExecutor().dplink(dplinkConfig);
+
+        // each target instead of the outputDir, with the same java modules and the app
+        assertFalse(Files.exists(outputDir));
+        for (String target : Arrays.asList("app-first", "app-second")) {
+            Path targetDir = buildDir.resolve(target);
+            assertTrue(new String(Files.readAllBytes(targetDir.resolve("release")), StandardCharsets.UTF_8).contains("java.sql"));
+            assertTrue(Files.exists(targetDir.resolve("bin/app")));
+            assertTrue(Files.exists(targetDir.resolve("lib/sql.jar")));
+        }
+    }
+
+    @Test
+    void testLibsFromSeveralDirectories() throws Exception {
+        // e.g. the jar task's jar and a jar in the gradle cache, rather than the jars in build/libs
+        Path appJar = TestJars.writeJar(libsPath.resolve("app.jar"), TestJars.UsesJavaBase.class);
+        Files.createDirectories(buildDir.resolve("cache"));
+        Path dependencyJar = TestJars.writeJar(buildDir.resolve("cache/sql.jar"), TestJars.UsesJavaSql.class);
+        TestJars.writeJar(libsPath.resolve("ignored.jar"), TestJars.UsesJavaLogging.class);
+        dplinkConfig.setAnalysisMode(AnalysisMode.BYTECODE);
+        dplinkConfig.setLibs(Arrays.asList(appJar, dependencyJar));
+        dplinkConfig.setMainClassName(of(TestJars.UsesJavaBase.class.getName()));
+        dplinkConfig.setExecutableJar(of("app.jar"));
+
+        new DplinkExecutor().dplink(dplinkConfig);
+
+        assertTrue(Files.exists(outputDir.resolve("lib/app.jar")));
+        assertTrue(Files.exists(outputDir.resolve("lib/sql.jar")));
+        assertFalse(Files.exists(outputDir.resolve("lib/ignored.jar")));
+        String release = new String(Files.readAllBytes(outputDir.resolve("release")), StandardCharsets.UTF_8);
+        assertTrue(release.contains("java.sql"), release);
+    }
+
+    @Test
+    void testFatJarThatIsNotOneOfTheLibs() throws Exception {
+        // e.g. a shadow jar in build/libs, which isn't on the runtime classpath of a java project
+        Files.createDirectories(buildDir.resolve("cache"));
+        Path dependencyJar = TestJars.writeJar(buildDir.resolve("cache/base.jar"), TestJars.UsesJavaBase.class);
+        TestJars.writeJar(libsPath.resolve("app-all.jar"), TestJars.UsesJavaSql.class);
+        dplinkConfig.setAnalysisMode(AnalysisMode.BYTECODE);
+        dplinkConfig.setLibs(Collections.singletonList(dependencyJar));
+        dplinkConfig.setFatJar(true);
+        dplinkConfig.setMainClassName(of(TestJars.UsesJavaSql.class.getName()));
+        dplinkConfig.setExecutableJar(of("app-all.jar"));
+
+        new DplinkExecutor().dplink(dplinkConfig);
+
+        assertTrue(Files.exists(outputDir.resolve("lib/app-all.jar")));
+        String release = new String(Files.readAllBytes(outputDir.resolve("release")), StandardCharsets.UTF_8);
+        assertTrue(release.contains("java.sql"), release);
+
+        // or the path of one anywhere else
+        Path fatJar = TestJars.writeJar(buildDir.resolve("cache/app-all.jar"), TestJars.UsesJavaSql.class);
+        Files.delete(libsPath.resolve("app-all.jar"));
+        FileUtils.forceDelete(outputDir.toFile());
+        dplinkConfig.setExecutableJar(of(fatJar.toString()));
+
+        new DplinkExecutor().dplink(dplinkConfig);
+
+        assertTrue(Files.exists(outputDir.resolve("lib/app-all.jar")));
+        assertTrue(new String(Files.readAllBytes(outputDir.resolve("bin/app")), StandardCharsets.UTF_8)
+                .contains("lib/app-all.jar"));
+    }
+
+    @Test
+    void testAppWithADependency() throws Exception {
+        TestJars.writeJar(libsPath.resolve("app.jar"), TestJars.StartsUp.class);
+        TestJars.writeJar(libsPath.resolve("base.jar"), TestJars.UsesJavaBase.class);
+        dplinkConfig.setAnalysisMode(AnalysisMode.BYTECODE);
+        dplinkConfig.setMainClassName(of(TestJars.StartsUp.class.getName()));
+        dplinkConfig.setExecutableJar(of("app.jar"));
+        dplinkConfig.setAppArgs(of("from the script"));
+        // the training run needs the dependency as much as the app does
+        dplinkConfig.setAppCds(true);
+
+        new DplinkExecutor().dplink(dplinkConfig);
+
+        Process app = new ProcessBuilder(outputDir.resolve("bin/app").toString(), "and the command line").start();
+        String output = new String(app.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+        assertEquals(0, app.waitFor(), output);
+        assertEquals("hello from the script and the command line", output.trim());
+    }
+
+    @Test
+    void testLibsWithTheSameName() throws Exception {
+        Path appJar = TestJars.writeJar(libsPath.resolve("app.jar"), TestJars.UsesJavaBase.class);
+        Files.createDirectories(buildDir.resolve("cache"));
+        Path otherAppJar = TestJars.writeJar(buildDir.resolve("cache/app.jar"), TestJars.UsesJavaSql.class);
+        dplinkConfig.setAnalysisMode(AnalysisMode.BYTECODE);
+        dplinkConfig.setLibs(Arrays.asList(appJar, otherAppJar));
+
+        // they would overwrite each other in the image's lib directory
+        assertThrows(RuntimeException.class, () -> new DplinkExecutor().dplink(dplinkConfig));
+        assertFalse(Files.exists(outputDir));
+    }
+
+    @Test
+    void testAppLinkedIntoTheImage() throws Exception {
+        TestJars.writeJar(libsPath.resolve("sql-lib.jar"), TestJars.UsesJavaSql.class);
+        dplinkConfig.setAnalysisMode(AnalysisMode.BYTECODE);
+        dplinkConfig.setLinkApp(true);
+
+        new DplinkExecutor().dplink(dplinkConfig);
+
+        Process java = new ProcessBuilder(outputDir.resolve("bin/java").toString(), "--list-modules").start();
+        String modules = new String(java.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+        assertEquals(0, java.waitFor());
+        assertTrue(modules.contains("sql.lib"), modules);
+        assertTrue(modules.contains("java.sql"), modules);
+    }
+
+    @Test
+    void testImageRestoredFromImageCache() throws Exception {
+        TestJars.writeJar(libsPath.resolve("base.jar"), TestJars.UsesJavaBase.class);
+        dplinkConfig.setAnalysisMode(AnalysisMode.BYTECODE);
+        dplinkConfig.setImageCacheDir(of(buildDir.resolve("image-cache")));
+        Path reportFile = dplinkConfig.reportFile();
+
+        new DplinkExecutor().dplink(dplinkConfig);
+        assertTrue(new String(Files.readAllBytes(reportFile), StandardCharsets.UTF_8).contains("\"jlink\""));
+
+        // e.g. another checkout of the same app
+        FileUtils.forceDelete(outputDir.toFile());
+        new DplinkExecutor().dplink(dplinkConfig);
+        String report = new String(Files.readAllBytes(reportFile), StandardCharsets.UTF_8);
+        assertTrue(report.contains("\"imageRestore\""));
+        assertFalse(report.contains("\"jlink\""));
+        Process java = new ProcessBuilder(outputDir.resolve("bin/java").toString(), "-version").inheritIO().start();
+        assertEquals(0, java.waitFor());
+    }
+
+    @Test
+    void testNoImageCacheForJdkWithoutReleaseFile() throws Exception {
+        TestJars.writeJar(libsPath.resolve("base.jar"), TestJars.UsesJavaBase.class);
+        // the same jmods as the running JDK, but nothing to tell which build of which JDK they are
+        Path modulesHome = buildDir.resolve("jdk");
+        Files.createDirectories(modulesHome);
+        Files.createSymbolicLink(modulesHome.resolve("jmods"), Paths.get(System.getProperty("java.home"), "jmods"));
+        dplinkConfig.setModulesHome(modulesHome);
+        dplinkConfig.setAnalysisMode(AnalysisMode.BYTECODE);
+        dplinkConfig.setImageCacheDir(of(buildDir.resolve("image-cache")));
+        Path reportFile = dplinkConfig.reportFile();
+
+        new DplinkExecutor().dplink(dplinkConfig);
+        FileUtils.forceDelete(outputDir.toFile());
+        new DplinkExecutor().dplink(dplinkConfig);
+
+        String report = new String(Files.readAllBytes(reportFile), StandardCharsets.UTF_8);
+        assertTrue(report.contains("\"jlink\""));
+        assertFalse(report.contains("\"imageRestore\""));
+    }
+
+    @Test
+    void testNoSharedAnalysesForJdkWithoutReleaseFile() throws Exception {
+        TestJars.writeJar(libsPath.resolve("base.jar"), TestJars.UsesJavaBase.class);
+        Path sharedCacheDir = buildDir.resolve("shared-cache");
+        dplinkConfig.setAnalysisMode(AnalysisMode.BYTECODE);
+        dplinkConfig.setSharedCacheDir(of(sharedCacheDir));
+
+        new DplinkExecutor().dplink(dplinkConfig);
+        assertEquals(1, entries(sharedCacheDir.resolve("jdeps")));
+
+        FileUtils.forceDelete(sharedCacheDir.toFile());
+        FileUtils.forceDelete(outputDir.toFile());
+        Path modulesHome = buildDir.resolve("jdk");
+        Files.createDirectories(modulesHome);
+        Files.createSymbolicLink(modulesHome.resolve("jmods"), Paths.get(System.getProperty("java.home"), "jmods"));
+        dplinkConfig.setModulesHome(modulesHome);
+
+        new DplinkExecutor().dplink(dplinkConfig);
+        assertEquals(0, entries(sharedCacheDir.resolve("jdeps")));
+        assertTrue(Files.exists(outputDir.resolve("release")));
+    }
+
+    private String cachedJavaModules(Path jarPath) throws IOException {
+        String jarHash = Hashes.sha256(jarPath);
+        try (Stream<Path> entries = Files.list(buildDir.resolve("dplink/jdeps-cache"))) {
+            Path entry = entries.filter(cacheEntry -> cacheEntry.getFileName().toString().startsWith(jarHash))
+                    .findFirst()
+                    .orElseThrow(() -> new AssertionError("No cache entry for " + jarPath));
+            return new String(Files.readAllBytes(entry), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static long entries(Path cacheDir) throws IOException {
+        if (!Files.isDirectory(cacheDir)) {
+            return 0;
+        }
+        // e.g. a jar's hash then bytecode-17.0.9-4f1c2d3e4b5a
+        try (Stream<Path> entries = Files.list(cacheDir)) {
+            return entries.filter(entry -> entry.getFileName().toString().matches("[0-9a-f]{64}-bytecode-.*")).count();
+        }
+    }
+
 //    @Test
 //    void testDplinkWithJvmArgs() throws Exception {
 //
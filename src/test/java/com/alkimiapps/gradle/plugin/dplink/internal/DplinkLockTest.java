@@ -0,0 +1,84 @@
+package com.alkimiapps.gradle.plugin.dplink.internal;
+
+import com.alkimiapps.javatools.FileUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+class DplinkLockTest {
+
+    private final Path testDir = Paths.get("/tmp/dplink-lock-test");
+    private final Path lockFile = testDir.resolve("dplink.lock");
+    private final Path appJar = testDir.resolve("libs/app.jar");
+    private final Path libJar = testDir.resolve("libs/lib.jar");
+
+    @BeforeEach
+    void cleanUp() throws IOException {
+        if (Files.exists(testDir)) {
+            FileUtils.forceDelete(testDir.toFile());
+        }
+        Files.createDirectories(testDir);
+    }
+
+    @Test
+    void testReadAfterWrite() {
+        lock().write(lockFile);
+
+        DplinkLock readLock = DplinkLock.read(lockFile);
+        assertEquals(new HashSet<>(Arrays.asList("java.base", "java.logging", "java.sql")), readLock.javaModules());
+        assertTrue(readLock.differences("jdeps 17", jarHashes()).isEmpty());
+    }
+
+    @Test
+    void testDifferences() {
+        lock().write(lockFile);
+
+        Map<Path, String> changedJarHashes = jarHashes();
+        changedJarHashes.put(libJar, "cde");
+        changedJarHashes.remove(appJar);
+        changedJarHashes.put(testDir.resolve("libs/new.jar"), "def");
+        List<String> differences = DplinkLock.read(lockFile).differences("jdeps 21", changedJarHashes);
+
+        assertEquals(Arrays.asList("locked with jdeps 17 but analysing with jdeps 21", "changed: lib.jar",
+                "not locked: new.jar", "locked but no longer used: app.jar"), differences);
+    }
+
+    @Test
+    void testMalformedLock() throws IOException {
+        Files.write(lockFile, Collections.singletonList("analyzer\tjdeps 17"), StandardCharsets.UTF_8);
+
+        DplinkException failure = assertThrows(DplinkException.class, () -> DplinkLock.read(lockFile));
+        assertEquals(Collections.singletonList("analyzer\tjdeps 17"), failure.getDetails());
+    }
+
+    private DplinkLock lock() {
+        Map<Path, Set<String>> jarJavaModules = new HashMap<>();
+        jarJavaModules.put(appJar, new HashSet<>(Arrays.asList("java.base", "java.sql")));
+        jarJavaModules.put(libJar, new HashSet<>(Arrays.asList("java.base", "java.logging")));
+        return new DplinkLock("jdeps 17", jarHashes(), jarJavaModules,
+                new HashSet<>(Arrays.asList("java.base", "java.logging", "java.sql")));
+    }
+
+    private Map<Path, String> jarHashes() {
+        Map<Path, String> jarHashes = new HashMap<>();
+        jarHashes.put(appJar, "abc");
+        jarHashes.put(libJar, "bcd");
+        return jarHashes;
+    }
+}
@@ -0,0 +1,75 @@
+package com.alkimiapps.gradle.plugin.dplink.internal;
+
+import com.alkimiapps.javatools.FileUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+
+class DplinkReportTest {
+
+    private final Path testDir = Paths.get("/tmp/dplink-report-test");
+    private final Path javaHome = Paths.get(System.getProperty("java.home"));
+    // an image with the modules of the JDK running the test
+    private final Path imageDir = testDir.resolve("app");
+    private final Path reportFile = testDir.resolve("reports/dplink/dplink.json");
+
+    @BeforeEach
+    void setUp() throws IOException {
+        if (Files.exists(testDir)) {
+            FileUtils.forceDelete(testDir.toFile());
+        }
+        Files.createDirectories(imageDir);
+        Files.createSymbolicLink(imageDir.resolve("lib"), javaHome.resolve("lib"));
+        Files.write(testDir.resolve("test1.jar"), new byte[100]);
+    }
+
+    @Test
+    void testPhasesAndJdepsRuns() throws IOException {
+        DplinkReport report = new DplinkReport();
+        assertEquals("done", report.time("jlink", () -> "done"));
+        report.time("jlink", () -> { });
+        report.record("copyLibs", 3_000_000);
+        report.timeJdeps(Collections.singletonList(testDir.resolve("test1.jar")), () -> null);
+        report.write(reportFile);
+
+        String json = new String(Files.readAllBytes(reportFile), StandardCharsets.UTF_8).replaceAll("\\s", "");
+        assertTrue(json.matches("(?s).*\"jlink\":\\{\"count\":2,.*"), json);
+        assertTrue(json.matches("(?s).*\"copyLibs\":\\{\"count\":1,\"totalMillis\":3,.*"), json);
+        assertTrue(json.contains("\"jdepsRuns\":[{\"jars\":[\"test1.jar\"],\"bytes\":100,"), json);
+    }
+
+    @Test
+    void testModuleSizesOfRelinkedImage() throws IOException {
+        DplinkReport report = new DplinkReport();
+        report.addImage(imageDir, javaHome, Arrays.asList("test1.jar"), true);
+        report.write(reportFile);
+
+        String json = new String(Files.readAllBytes(reportFile), StandardCharsets.UTF_8).replaceAll("\\s", "");
+        assertTrue(json.contains("\"release\":\"" + JdkRelease.of(javaHome) + "\""), json);
+        assertTrue(json.matches("(?s).*\"moduleBytes\":\\{.*\"java.base\":[1-9][0-9]*.*"), json);
+        assertTrue(json.contains("\"jarBytes\":{\"test1.jar\":0}"), json);
+    }
+
+    @Test
+    void testNoModuleSizesOfImageNotRelinked() throws IOException {
+        DplinkReport report = new DplinkReport();
+        report.addImage(imageDir, javaHome, Collections.emptyList(), false);
+        report.write(reportFile);
+
+        String json = new String(Files.readAllBytes(reportFile), StandardCharsets.UTF_8).replaceAll("\\s", "");
+        assertTrue(json.contains("\"" + imageDir + "\""), json);
+        assertFalse(json.contains("moduleBytes"), json);
+        assertFalse(json.contains("moduleSize"), json);
+    }
+}
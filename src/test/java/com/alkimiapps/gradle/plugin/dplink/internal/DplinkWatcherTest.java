@@ -0,0 +1,87 @@
+package com.alkimiapps.gradle.plugin.dplink.internal;
+
+import com.alkimiapps.javatools.FileUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+class DplinkWatcherTest {
+
+    private final Path testDir = Paths.get("/tmp/dplink-watcher-test");
+    private final Path libsDir = testDir.resolve("build/libs");
+    private final Path outputDir = testDir.resolve("build/app");
+
+    @BeforeEach
+    void cleanUp() throws IOException {
+        if (Files.exists(testDir)) {
+            FileUtils.forceDelete(testDir.toFile());
+        }
+        Files.createDirectories(libsDir);
+    }
+
+    @Test
+    void testRelinkWhenJarsChange() throws Exception {
+        TestJars.writeJar(libsDir.resolve("base.jar"), TestJars.UsesJavaBase.class);
+
+        AtomicBoolean isCancelled = new AtomicBoolean();
+        Thread watcherThread = this.startWatcher(isCancelled);
+        try {
+            assertTrue(awaitModules("java.base"));
+
+            TestJars.writeJar(libsDir.resolve("sql.jar"), TestJars.UsesJavaSql.class);
+            assertTrue(awaitModules("java.sql"));
+        } finally {
+            watcherThread.interrupt();
+            watcherThread.join(60_000);
+        }
+        assertFalse(watcherThread.isAlive());
+    }
+
+    @Test
+    void testStopWhenCancelledWithoutAnInterrupt() throws Exception {
+        TestJars.writeJar(libsDir.resolve("base.jar"), TestJars.UsesJavaBase.class);
+
+        AtomicBoolean isCancelled = new AtomicBoolean();
+        Thread watcherThread = this.startWatcher(isCancelled);
+        assertTrue(awaitModules("java.base"));
+
+        // as gradle cancels a build, which doesn't interrupt the task action
+        isCancelled.set(true);
+        watcherThread.join(10_000);
+        assertFalse(watcherThread.isAlive());
+    }
+
+    private Thread startWatcher(AtomicBoolean isCancelled) {
+        DplinkConfig dplinkConfig = new DplinkConfig();
+        dplinkConfig.setBuildFolderPath(testDir.resolve("build"));
+        dplinkConfig.setBuildLibsDir(libsDir);
+        dplinkConfig.setOutputDir(outputDir);
+        dplinkConfig.setAnalysisMode(AnalysisMode.BYTECODE);
+        Thread watcherThread = new Thread(() -> new DplinkWatcher(dplinkConfig).watch(isCancelled::get));
+        watcherThread.start();
+        return watcherThread;
+    }
+
+    /**
+     * @return true if the image has the java module within a minute
+     */
+    private boolean awaitModules(String javaModule) throws Exception {
+        Path releaseFile = outputDir.resolve("release");
+        for (int i = 0; i < 600; i++) {
+            if (Files.exists(releaseFile) && new String(Files.readAllBytes(releaseFile), StandardCharsets.UTF_8).contains(javaModule)) {
+                return true;
+            }
+            Thread.sleep(100);
+        }
+        return false;
+    }
+}
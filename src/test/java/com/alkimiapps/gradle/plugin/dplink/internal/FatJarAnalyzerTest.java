@@ -0,0 +1,82 @@
+package com.alkimiapps.gradle.plugin.dplink.internal;
+
+import com.alkimiapps.javatools.FileUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Optional;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+class FatJarAnalyzerTest {
+
+    private final Path testDir = Paths.get("/tmp/dplink-fatjar-test");
+    private final Path cacheDir = testDir.resolve("cache");
+
+    @BeforeEach
+    void cleanUp() throws IOException {
+        if (Files.exists(testDir)) {
+            FileUtils.forceDelete(testDir.toFile());
+        }
+        Files.createDirectories(testDir);
+    }
+
+    @Test
+    void testJavaModulesOfNestedJars() throws IOException {
+        Path fatJarPath = fatJar();
+
+        assertTrue(FatJarAnalyzer.hasNestedJars(fatJarPath));
+        assertEquals(new HashSet<>(Arrays.asList("java.base", "java.logging", "java.sql")), fatJarAnalyzer().javaModulesOfJar(fatJarPath));
+    }
+
+    @Test
+    void testNestedJarsAreCached() throws IOException {
+        Path fatJarPath = fatJar();
+
+        fatJarAnalyzer().javaModulesOfJar(fatJarPath);
+        try (Stream<Path> entries = Files.list(cacheDir)) {
+            // one entry for the nested jar, the classes of the fat jar itself are not cached
+            assertEquals(1, entries.count());
+        }
+        assertEquals(new HashSet<>(Arrays.asList("java.base", "java.logging", "java.sql")), fatJarAnalyzer().javaModulesOfJar(fatJarPath));
+    }
+
+    @Test
+    void testJarWithoutNestedJars() throws IOException {
+        Path jarPath = TestJars.writeJar(testDir.resolve("plain.jar"), TestJars.UsesJavaSql.class);
+
+        assertFalse(FatJarAnalyzer.hasNestedJars(jarPath));
+    }
+
+    private FatJarAnalyzer fatJarAnalyzer() {
+        return new FatJarAnalyzer(new BytecodeAnalyzer(Paths.get(System.getProperty("java.home"))),
+                new JdepsCache("bytecode-test", cacheDir, Optional.empty(), 100), new DplinkReport());
+    }
+
+    /**
+     * @return a Spring Boot style jar, whose classes use java.sql and whose one nested lib uses java.logging
+     */
+    private Path fatJar() throws IOException {
+        Path fatJarPath = testDir.resolve("fat.jar");
+        try (OutputStream outputStream = Files.newOutputStream(fatJarPath);
+             ZipOutputStream zipOutputStream = new ZipOutputStream(outputStream)) {
+            TestJars.addClass(zipOutputStream, "BOOT-INF/classes/", TestJars.UsesJavaSql.class);
+            zipOutputStream.putNextEntry(new ZipEntry("BOOT-INF/lib/logging.jar"));
+            zipOutputStream.write(TestJars.jarOf("", TestJars.UsesJavaLogging.class));
+            zipOutputStream.closeEntry();
+        }
+        return fatJarPath;
+    }
+}
@@ -0,0 +1,77 @@
+package com.alkimiapps.gradle.plugin.dplink.internal;
+
+import com.alkimiapps.javatools.FileUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.spi.ToolProvider;
+
+class ImageCacheTest {
+
+    private final Path testDir = Paths.get("/tmp/dplink-image-cache-test");
+    private final Path imageDir = testDir.resolve("image");
+    private final Path restoredDir = testDir.resolve("restored");
+    // on another file system where there is one (e.g. tmpfs), so that the image is restored by copying
+    private final Path cacheDir = Files.isDirectory(Paths.get("/dev/shm")) ?
+            Paths.get("/dev/shm/dplink-image-cache-test") : testDir.resolve("cache");
+
+    @BeforeEach
+    void cleanUp() throws IOException {
+        for (Path dir : new Path[]{testDir, cacheDir}) {
+            if (Files.exists(dir)) {
+                FileUtils.forceDelete(dir.toFile());
+            }
+        }
+        Files.createDirectories(testDir);
+    }
+
+    @Test
+    void testRestoredImageRuns() throws Exception {
+        ToolProvider jlink = ToolProvider.findFirst("jlink").orElseThrow(IllegalStateException::new);
+        assertEquals(0, jlink.run(System.out, System.err, "--add-modules", "java.base", "--output", imageDir.toString()));
+
+        ImageCache imageCache = new ImageCache(cacheDir, 1024 * FileUtils.ONE_MB);
+        assertFalse(imageCache.restore("key", restoredDir));
+        imageCache.store("key", imageDir);
+        assertTrue(imageCache.restore("key", restoredDir));
+
+        Process java = new ProcessBuilder(restoredDir.resolve("bin/java").toString(), "-version").inheritIO().start();
+        assertEquals(0, java.waitFor());
+    }
+
+    @Test
+    void testLeastRecentlyUsedImageIsEvicted() throws IOException {
+        ImageCache imageCache = new ImageCache(cacheDir, 2500);
+        imageCache.store("a", image("a", 1000));
+        imageCache.store("b", image("b", 1000));
+        // a was used long ago, b more recently
+        Files.setLastModifiedTime(cacheDir.resolve("a"), FileTime.fromMillis(System.currentTimeMillis() - 60_000));
+
+        imageCache.store("c", image("c", 1000));
+
+        assertFalse(imageCache.restore("a", testDir.resolve("restored-a")));
+        assertFalse(Files.exists(testDir.resolve("restored-a")));
+        assertTrue(imageCache.restore("b", testDir.resolve("restored-b")));
+        assertTrue(imageCache.restore("c", testDir.resolve("restored-c")));
+        assertEquals(1000, Files.size(testDir.resolve("restored-c/lib/modules")));
+    }
+
+    /**
+     * @return a fake image of the specified size
+     */
+    private Path image(String name, int bytes) throws IOException {
+        Path fakeImageDir = testDir.resolve("image-" + name);
+        Files.createDirectories(fakeImageDir.resolve("lib"));
+        Files.write(fakeImageDir.resolve("lib/modules"), new byte[bytes]);
+        return fakeImageDir;
+    }
+}
@@ -0,0 +1,83 @@
+package com.alkimiapps.gradle.plugin.dplink.internal;
+
+import com.alkimiapps.javatools.FileUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static java.util.Optional.empty;
+import static java.util.Optional.of;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+class JdepsCacheTest {
+
+    private final Path cacheDir = Paths.get("/tmp/dplink-cache-test");
+    private final Path buildCacheDir = cacheDir.resolve("build");
+    private final Path sharedCacheDir = cacheDir.resolve("shared");
+    private final Set<String> modules = new HashSet<>(Arrays.asList("java.base", "java.sql"));
+
+    @BeforeEach
+    void cleanUp() throws IOException {
+        if (Files.exists(cacheDir)) {
+            FileUtils.forceDelete(cacheDir.toFile());
+        }
+    }
+
+    @Test
+    void testGetAfterPut() {
+        JdepsCache jdepsCache = new JdepsCache("9.0.4", buildCacheDir, empty(), 10);
+
+        assertFalse(jdepsCache.get("abc").isPresent());
+
+        jdepsCache.put("abc", modules);
+
+        assertEquals(of(modules), jdepsCache.get("abc"));
+    }
+
+    @Test
+    void testEntriesAreKeyedByJdkRelease() {
+        new JdepsCache("9.0.4", buildCacheDir, empty(), 10).put("abc", modules);
+
+        assertFalse(new JdepsCache("10", buildCacheDir, empty(), 10).get("abc").isPresent());
+    }
+
+    @Test
+    void testSharedEntriesAreUsedByOtherBuilds() {
+        new JdepsCache("9.0.4", buildCacheDir, of(sharedCacheDir), 10).put("abc", modules);
+
+        Path otherBuildCacheDir = cacheDir.resolve("otherBuild");
+        JdepsCache otherJdepsCache = new JdepsCache("9.0.4", otherBuildCacheDir, of(sharedCacheDir), 10);
+
+        assertEquals(of(modules), otherJdepsCache.get("abc"));
+        assertEquals(of(modules), new JdepsCache("9.0.4", otherBuildCacheDir, empty(), 10).get("abc"));
+    }
+
+    @Test
+    void testTrimEvictsLeastRecentlyUsed() throws Exception {
+        JdepsCache jdepsCache = new JdepsCache("9.0.4", buildCacheDir, empty(), 2);
+
+        jdepsCache.put("a", modules);
+        jdepsCache.put("b", modules);
+        jdepsCache.put("c", modules);
+        Files.setLastModifiedTime(buildCacheDir.resolve("a-9.0.4"), FileTime.fromMillis(1000));
+        Files.setLastModifiedTime(buildCacheDir.resolve("b-9.0.4"), FileTime.fromMillis(2000));
+        Files.setLastModifiedTime(buildCacheDir.resolve("c-9.0.4"), FileTime.fromMillis(3000));
+        jdepsCache.get("a");
+
+        jdepsCache.trim();
+
+        assertTrue(jdepsCache.get("a").isPresent());
+        assertFalse(jdepsCache.get("b").isPresent());
+        assertTrue(jdepsCache.get("c").isPresent());
+    }
+}
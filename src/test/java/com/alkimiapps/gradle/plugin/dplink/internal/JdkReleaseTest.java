@@ -0,0 +1,52 @@
+package com.alkimiapps.gradle.plugin.dplink.internal;
+
+import com.alkimiapps.javatools.FileUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+class JdkReleaseTest {
+
+    private final Path testDir = Paths.get("/tmp/dplink-jdk-release-test");
+
+    @BeforeEach
+    void cleanUp() throws IOException {
+        if (Files.exists(testDir)) {
+            FileUtils.forceDelete(testDir.toFile());
+        }
+        Files.createDirectories(testDir);
+    }
+
+    @Test
+    void testBuildsOfTheSameReleaseByDifferentVendors() throws IOException {
+        Path temurin = jdk("temurin", "IMPLEMENTOR=\"Eclipse Adoptium\"", "JAVA_RUNTIME_VERSION=\"17.0.9+9\"");
+        Path zulu = jdk("zulu", "IMPLEMENTOR=\"Azul Systems, Inc.\"", "JAVA_RUNTIME_VERSION=\"17.0.9+8-LTS\"");
+
+        assertEquals(JdkRelease.of(temurin), JdkRelease.of(zulu));
+        assertNotEquals(JdkRelease.build(temurin), JdkRelease.build(zulu));
+    }
+
+    @Test
+    void testNoBuildWithoutReleaseFile() {
+        assertEquals("unknown", JdkRelease.of(testDir));
+        assertFalse(JdkRelease.build(testDir).isPresent());
+    }
+
+    private Path jdk(String name, String... releaseProperties) throws IOException {
+        Path javaHome = testDir.resolve(name);
+        Files.createDirectories(javaHome);
+        Files.write(javaHome.resolve("release"), Arrays.asList("JAVA_VERSION=\"17.0.9\"", String.join("\n", releaseProperties)),
+                StandardCharsets.UTF_8);
+        return javaHome;
+    }
+}
@@ -0,0 +1,46 @@
+package com.alkimiapps.gradle.plugin.dplink.internal;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+
+class LinkProfileTest {
+
+    @Test
+    void testLegacyOptions() {
+        assertEquals(Arrays.asList("--no-header-files", "--no-man-pages", "--compress=2"),
+                LinkProfile.LEGACY.jlinkOptions(true));
+        assertEquals(LinkProfile.LEGACY.jlinkOptions(true), LinkProfile.LEGACY.jlinkOptions(false));
+    }
+
+    @Test
+    void testStartupOptions() {
+        assertEquals(Arrays.asList("--no-header-files", "--no-man-pages", "--strip-debug", "--compress=0"),
+                LinkProfile.STARTUP.jlinkOptions(true));
+    }
+
+    @Test
+    void testBalancedOptions() {
+        assertEquals(Arrays.asList("--no-header-files", "--no-man-pages", "--strip-debug", "--compress=1"),
+                LinkProfile.BALANCED.jlinkOptions(false));
+    }
+
+    @Test
+    void testSizeStripsNativeCommandsUnlessAppImage() {
+        assertTrue(LinkProfile.SIZE.jlinkOptions(false).contains("--strip-native-commands"));
+        assertFalse(LinkProfile.SIZE.jlinkOptions(true).contains("--strip-native-commands"));
+        assertTrue(LinkProfile.SIZE.jlinkOptions(true).contains("--compress=2"));
+    }
+
+    @Test
+    void testNamed() {
+        assertEquals(LinkProfile.STARTUP, LinkProfile.named("startup"));
+        assertEquals(LinkProfile.SIZE, LinkProfile.named("Size"));
+        assertThrows(RuntimeException.class, () -> LinkProfile.named("tiny"));
+    }
+}
@@ -0,0 +1,67 @@
+package com.alkimiapps.gradle.plugin.dplink.internal;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+
+class ParallelTest {
+
+    @Test
+    void testMap() {
+        Map<Integer, Integer> squares = Parallel.map(Arrays.asList(1, 2, 3), i -> i * i);
+
+        assertEquals(3, squares.size());
+        assertEquals(9, (int) squares.get(3));
+    }
+
+    @Test
+    void testAllFailuresAreReported() {
+        RuntimeException failure = assertThrows(RuntimeException.class, () -> Parallel.map(Arrays.asList(1, 2, 3, 4), i -> {
+            if (i % 2 == 0) {
+                throw new RuntimeException("failed " + i);
+            }
+            return i;
+        }));
+
+        assertTrue(failure instanceof DplinkException);
+        assertEquals(2, failure.getSuppressed().length);
+        assertTrue(failure.getMessage().contains("failed 2"));
+        assertTrue(failure.getMessage().contains("failed 4"));
+    }
+
+    @Test
+    void testOneFailureIsReportedAsItIs() {
+        RuntimeException failure = assertThrows(RuntimeException.class, () -> Parallel.map(Arrays.asList(1, 2), i -> {
+            if (i == 2) {
+                throw new IllegalStateException("failed " + i);
+            }
+            return i;
+        }));
+
+        assertTrue(failure instanceof IllegalStateException);
+    }
+
+    @Test
+    void testToolFailuresAreCollected() {
+        ToolRunner toolRunner = new ToolRunner(Paths.get(System.getProperty("java.home")), false, 60, new Semaphore(2));
+        try (ToolScheduler toolScheduler = new ToolScheduler(2, false)) {
+            DplinkException failure = assertThrows(DplinkException.class, () -> toolScheduler.map(Arrays.asList("A", "B"), source -> {
+                toolRunner.run("javac", Arrays.asList("/tmp/dplink-parallel-test-missing-" + source + ".java"), null);
+                return source;
+            }));
+
+            assertEquals(2, failure.getSuppressed().length);
+            DplinkException toolFailure = (DplinkException) failure.getSuppressed()[0];
+            assertTrue(toolFailure.getMessage().startsWith("Command failed with exit code"));
+            assertFalse(toolFailure.getDetails().isEmpty());
+        }
+    }
+}
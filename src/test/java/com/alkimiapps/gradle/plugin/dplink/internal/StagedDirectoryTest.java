@@ -0,0 +1,89 @@
+package com.alkimiapps.gradle.plugin.dplink.internal;
+
+import com.alkimiapps.javatools.FileUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+class StagedDirectoryTest {
+
+    private final Path testDir = Paths.get("/tmp/dplink-staged-directory-test");
+    private final Path appDir = testDir.resolve("app");
+
+    @BeforeEach
+    void cleanUp() throws IOException {
+        if (Files.exists(testDir)) {
+            FileUtils.forceDelete(testDir.toFile());
+        }
+        Files.createDirectories(appDir);
+        Files.write(appDir.resolve("release"), "previous".getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testCommitReplacesTheDirectory() throws Exception {
+        try (StagedDirectory stagedDirectory = new StagedDirectory(appDir)) {
+            assertFalse(Files.exists(stagedDirectory.path()));
+            Files.createDirectories(stagedDirectory.path());
+            Files.write(stagedDirectory.path().resolve("release"), "staged".getBytes(StandardCharsets.UTF_8));
+            stagedDirectory.commit();
+        }
+
+        assertEquals("staged", new String(Files.readAllBytes(appDir.resolve("release")), StandardCharsets.UTF_8));
+        // the previous directory is deleted in the background
+        for (int i = 0; i < 100 && !siblings().isEmpty(); i++) {
+            Thread.sleep(100);
+        }
+        assertTrue(siblings().isEmpty());
+    }
+
+    @Test
+    void testFailureLeavesTheDirectoryAsItWas() throws IOException {
+        assertThrows(IllegalStateException.class, () -> {
+            try (StagedDirectory stagedDirectory = new StagedDirectory(appDir)) {
+                Files.createDirectories(stagedDirectory.path());
+                Files.write(stagedDirectory.path().resolve("release"), "staged".getBytes(StandardCharsets.UTF_8));
+                throw new IllegalStateException("jlink failed");
+            }
+        });
+
+        assertEquals("previous", new String(Files.readAllBytes(appDir.resolve("release")), StandardCharsets.UTF_8));
+        assertEquals(0, siblings().size());
+    }
+
+    @Test
+    void testLeftoversAreDeleted() throws IOException {
+        Files.createDirectories(testDir.resolve(".app.staging-died"));
+        Files.createDirectories(testDir.resolve(".app.previous-died"));
+        Files.createDirectories(testDir.resolve(".other.staging-kept"));
+
+        new StagedDirectory(appDir).close();
+
+        assertEquals(Arrays.asList(".other.staging-kept"), siblings());
+    }
+
+    /**
+     * @return the names of the directories alongside the app directory
+     */
+    private List<String> siblings() throws IOException {
+        try (Stream<Path> paths = Files.list(testDir)) {
+            return paths.map(path -> path.getFileName().toString())
+                    .filter(name -> !name.equals("app"))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.alkimiapps.gradle.plugin.dplink.internal;
+
+import com.alkimiapps.javatools.FileUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+class StartupTraceTest {
+
+    private final Path testDir = Paths.get("/tmp/dplink-startup-trace-test");
+
+    @BeforeEach
+    void cleanUp() throws IOException {
+        if (Files.exists(testDir)) {
+            FileUtils.forceDelete(testDir.toFile());
+        }
+        Files.createDirectories(testDir);
+    }
+
+    @Test
+    void testTraceClass() {
+        assertEquals(Optional.of("java/lang/Object"), StartupTrace.traceClass("java.lang.Object source: jrt:/java.base"));
+        assertEquals(Optional.of("java/sql/DriverManager$1"),
+                StartupTrace.traceClass("[0.052s][info][class,load] java.sql.DriverManager$1 source: jrt:/java.sql"));
+        // not from the image's modules
+        assertEquals(Optional.empty(), StartupTrace.traceClass("demo.Main source: file:/app/lib/app.jar"));
+        assertEquals(Optional.empty(), StartupTrace.traceClass("java.lang.String source: shared objects file"));
+    }
+
+    @Test
+    void testClassesInFirstLoadOrder() throws IOException {
+        Path firstTrace = testDir.resolve("first.log");
+        Path secondTrace = testDir.resolve("second.log");
+        Files.write(firstTrace, Arrays.asList("java.lang.Object source: jrt:/java.base",
+                "demo.Main source: file:/app/lib/app.jar", "java.lang.String source: jrt:/java.base"), StandardCharsets.UTF_8);
+        Files.write(secondTrace, Arrays.asList("java.lang.Object source: jrt:/java.base",
+                "java.sql.Connection source: jrt:/java.sql"), StandardCharsets.UTF_8);
+
+        StartupTrace startupTrace = new StartupTrace();
+        startupTrace.addClassLoads(firstTrace);
+        startupTrace.addClassLoads(secondTrace);
+        Path traceDir = testDir.resolve("trace/app");
+        startupTrace.write(traceDir, "abc");
+
+        List<String> classes = Arrays.asList("java/lang/Object", "java/lang/String", "java/sql/Connection");
+        assertEquals(classes, startupTrace.classes());
+        assertEquals(classes, StartupTrace.read(traceDir, "abc").map(StartupTrace::classes).orElse(null));
+        // traced from some other image
+        assertEquals(Optional.empty(), StartupTrace.read(traceDir, "def"));
+        assertEquals(Optional.empty(), StartupTrace.read(testDir.resolve("none"), "abc"));
+    }
+
+    @Test
+    void testJliResolutions() throws IOException {
+        String lambdaForm = "[LF_RESOLVE] java.lang.invoke.DirectMethodHandle$Holder invokeStatic L_L (success)";
+        String species = "[SPECIES_RESOLVE] java.lang.invoke.BoundMethodHandle$Species_LL (salvaged)";
+        StartupTrace startupTrace = new StartupTrace();
+        startupTrace.addOutputLine("Hello from the app");
+        startupTrace.addOutputLine(lambdaForm);
+        startupTrace.addOutputLine(species);
+        startupTrace.addOutputLine(lambdaForm);
+        Path traceDir = testDir.resolve("trace/app");
+        startupTrace.write(traceDir, "abc");
+
+        List<String> jliResolutions = Arrays.asList(lambdaForm, species);
+        assertEquals(jliResolutions, startupTrace.jliResolutions());
+        assertEquals(jliResolutions, StartupTrace.read(traceDir, "abc").map(StartupTrace::jliResolutions).orElse(null));
+        // as jlink reads it, the other lines are ignored
+        List<String> jliClassesFile = Files.readAllLines(traceDir.resolve(StartupTrace.JLI_CLASSES_FILE_NAME));
+        assertEquals(3, jliClassesFile.size());
+        assertTrue(jliClassesFile.get(0).startsWith("#"));
+    }
+}
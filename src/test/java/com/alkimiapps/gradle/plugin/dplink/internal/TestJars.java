@@ -0,0 +1,90 @@
+package com.alkimiapps.gradle.plugin.dplink.internal;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.util.logging.Logger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Jars of test classes, for tests of what java modules jars depend on.
+ */
+final class TestJars {
+
+    private TestJars() {
+    }
+
+    /**
+     * Write a jar. It's written alongside and then moved into place, so that a watcher sees the whole jar at once.
+     *
+     * @param jarPath the jar
+     * @param testClasses the classes in the jar
+     * @return the jar
+     */
+    static Path writeJar(Path jarPath, Class<?>... testClasses) throws IOException {
+        Path tempJarPath = jarPath.resolveSibling(jarPath.getFileName() + ".tmp");
+        try (OutputStream outputStream = Files.newOutputStream(tempJarPath)) {
+            outputStream.write(jarOf("", testClasses));
+        }
+        Files.move(tempJarPath, jarPath);
+        return jarPath;
+    }
+
+    /**
+     * @param prefix the prefix of the entry names e.g. BOOT-INF/classes/
+     * @param testClasses the classes in the jar
+     * @return the content of a jar
+     */
+    static byte[] jarOf(String prefix, Class<?>... testClasses) throws IOException {
+        ByteArrayOutputStream jar = new ByteArrayOutputStream();
+        try (ZipOutputStream zipOutputStream = new ZipOutputStream(jar)) {
+            for (Class<?> testClass : testClasses) {
+                addClass(zipOutputStream, prefix, testClass);
+            }
+        }
+        return jar.toByteArray();
+    }
+
+    /**
+     * @param zipOutputStream a jar being written
+     * @param prefix the prefix of the entry name e.g. BOOT-INF/classes/
+     * @param testClass the class to add to the jar
+     */
+    static void addClass(ZipOutputStream zipOutputStream, String prefix, Class<?> testClass) throws IOException {
+        String resourceName = testClass.getName().replace('.', '/') + ".class";
+        try (InputStream classFile = testClass.getClassLoader().getResourceAsStream(resourceName)) {
+            zipOutputStream.putNextEntry(new ZipEntry(prefix + resourceName));
+            classFile.transferTo(zipOutputStream);
+            zipOutputStream.closeEntry();
+        }
+    }
+
+    static class UsesJavaBase {
+        String hello() {
+            return "hello";
+        }
+    }
+
+    static class StartsUp {
+        public static void main(String[] args) {
+            System.out.println(new UsesJavaBase().hello() + " " + String.join(" ", args));
+        }
+    }
+
+    static class UsesJavaSql {
+        String catalog(Connection connection) throws Exception {
+            return connection.getCatalog();
+        }
+    }
+
+    static class UsesJavaLogging {
+        void log() {
+            Logger.getLogger("test").info("test");
+        }
+    }
+}
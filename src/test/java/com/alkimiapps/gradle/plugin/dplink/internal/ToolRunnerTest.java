@@ -0,0 +1,74 @@
+package com.alkimiapps.gradle.plugin.dplink.internal;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+
+class ToolRunnerTest {
+
+    private final Path javaHome = Paths.get(System.getProperty("java.home"));
+
+    @Test
+    void testToolsOfTheRunningJdkRunInProcess() {
+        ToolRunner toolRunner = new ToolRunner(javaHome, false, 60, new Semaphore(1));
+        assertTrue(toolRunner.isInProcess());
+
+        List<String> output = new ArrayList<>();
+        toolRunner.run("jdeps", Collections.singletonList("--version"), output::add);
+        assertFalse(output.isEmpty());
+    }
+
+    @Test
+    void testFailureHasTheToolOutput() {
+        ToolRunner toolRunner = new ToolRunner(javaHome, false, 60, new Semaphore(1));
+
+        DplinkException failure = assertThrows(DplinkException.class,
+                () -> toolRunner.run("javac", Collections.singletonList("/tmp/no-such-dplink/Missing.java"), null));
+        assertTrue(failure.getDetails().stream().anyMatch(line -> line.contains("Missing.java")));
+    }
+
+    @Test
+    void testCancelledThreadStartsNoTool() {
+        Semaphore toolPermits = new Semaphore(1);
+        ToolRunner toolRunner = new ToolRunner(javaHome, false, 60, toolPermits);
+        List<String> output = new ArrayList<>();
+
+        Thread.currentThread().interrupt();
+        try {
+            assertThrows(RuntimeException.class, () -> toolRunner.run("jdeps", Collections.singletonList("--version"), output::add));
+        } finally {
+            Thread.interrupted();
+        }
+        assertTrue(output.isEmpty());
+        assertEquals(1, toolPermits.availablePermits());
+    }
+
+    @Test
+    void testTimedOutCommandIsKilled() {
+        ToolRunner toolRunner = new ToolRunner(javaHome, false, 1, new Semaphore(1));
+
+        long startNanos = System.nanoTime();
+        assertThrows(RuntimeException.class, () -> toolRunner.exec(new String[]{"sleep", "30"}, null));
+        assertTrue(System.nanoTime() - startNanos < 20_000_000_000L);
+    }
+
+    @Test
+    void testOutputIsPassedOnLineByLine() {
+        ToolRunner toolRunner = new ToolRunner(javaHome, false, 60, new Semaphore(1));
+        List<String> output = new ArrayList<>();
+
+        toolRunner.exec(new String[]{"printf", "one\\ntwo\\n"}, output::add);
+        assertEquals(Arrays.asList("one", "two"), output);
+    }
+}
@@ -0,0 +1,90 @@
+package com.alkimiapps.gradle.plugin.dplink.internal;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+class ToolSchedulerTest {
+
+    @Test
+    void testAtMostMaxParallelToolsAtOnce() {
+        assertEquals(2, maxRunning(2, false));
+    }
+
+    @Test
+    void testAtMostMaxParallelToolsAtOnceOnVirtualThreads() {
+        // or on platform threads where the JDK doesn't have virtual threads
+        assertEquals(2, maxRunning(2, true));
+    }
+
+    @Test
+    void testResultsInItemOrder() {
+        try (ToolScheduler toolScheduler = new ToolScheduler(4, false)) {
+            List<Integer> items = IntStream.range(0, 20).boxed().collect(Collectors.toList());
+
+            // the earlier items take the longest, so they finish last
+            List<Integer> results = toolScheduler.map(items, item -> {
+                sleep(40 - 2 * item);
+                return item * 10;
+            });
+
+            assertEquals(items.stream().map(item -> item * 10).collect(Collectors.toList()), results);
+        }
+    }
+
+    @Test
+    void testFailuresAreThrownTogetherOnceAllHaveRun() {
+        AtomicInteger runCount = new AtomicInteger();
+        try (ToolScheduler toolScheduler = new ToolScheduler(2, false)) {
+            DplinkException dplinkException = assertThrows(DplinkException.class, () ->
+                    toolScheduler.map(Arrays.asList("a.jar", "b.jar", "c.jar", "d.jar"), item -> {
+                        runCount.incrementAndGet();
+                        if (item.startsWith("a") || item.startsWith("c")) {
+                            throw new RuntimeException(item + " failed");
+                        }
+                        return item;
+                    }));
+
+            assertEquals(4, runCount.get());
+            assertEquals(2, dplinkException.getSuppressed().length);
+            assertTrue(dplinkException.getMessage().contains("a.jar failed"));
+            assertTrue(dplinkException.getMessage().contains("c.jar failed"));
+        }
+    }
+
+    @Test
+    void testParallelism() {
+        assertEquals(3, ToolScheduler.parallelism(3));
+        assertEquals(Runtime.getRuntime().availableProcessors(), ToolScheduler.parallelism(0));
+    }
+
+    private static int maxRunning(int maxParallelTools, boolean virtualThreads) {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        try (ToolScheduler toolScheduler = new ToolScheduler(maxParallelTools, virtualThreads)) {
+            toolScheduler.map(IntStream.range(0, 12).boxed().collect(Collectors.toList()), item -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                sleep(20);
+                running.decrementAndGet();
+                return item;
+            });
+        }
+        return maxRunning.get();
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.alkimiapps.javatools;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
+
+class FileUtilsTest {
+
+    private final Path testDir = Paths.get("/tmp/dplink-file-utils-test");
+    private final Path srcDir = testDir.resolve("src");
+    private final Path destDir = testDir.resolve("dest");
+
+    @BeforeEach
+    void cleanUp() throws IOException {
+        if (Files.exists(testDir)) {
+            FileUtils.forceDelete(testDir.toFile());
+        }
+        Files.createDirectories(srcDir.resolve("bin"));
+    }
+
+    @Test
+    void testSyncDirectoryCopiesContentTimeAndPermissions() throws IOException {
+        Path java = srcDir.resolve("bin/java");
+        Files.write(java, "#!/bin/sh".getBytes(StandardCharsets.UTF_8));
+        Files.setPosixFilePermissions(java, PosixFilePermissions.fromString("rwxr-xr-x"));
+        Files.setLastModifiedTime(java, FileTime.fromMillis(1_000_000_000_000L));
+
+        // copied rather than linked
+        assertEquals(9, FileUtils.syncDirectory(srcDir, destDir, false));
+
+        Path copiedJava = destDir.resolve("bin/java");
+        assertArrayEquals(Files.readAllBytes(java), Files.readAllBytes(copiedJava));
+        assertEquals("rwxr-xr-x", PosixFilePermissions.toString(Files.getPosixFilePermissions(copiedJava)));
+        assertEquals(Files.getLastModifiedTime(java), Files.getLastModifiedTime(copiedJava));
+    }
+
+    @Test
+    void testSyncFilesSkipsUnchangedFiles() throws IOException {
+        Path first = srcDir.resolve("first.jar");
+        Path second = srcDir.resolve("bin/second.jar");
+        Files.write(first, new byte[100]);
+        Files.write(second, new byte[200]);
+
+        assertEquals(300, FileUtils.syncFiles(Arrays.asList(first, second), destDir, false));
+        assertEquals(0, FileUtils.syncFiles(Arrays.asList(first, second), destDir, false));
+
+        Files.write(second, new byte[250]);
+        assertEquals(250, FileUtils.syncFiles(Arrays.asList(first, second), destDir, false));
+        assertEquals(250, Files.size(destDir.resolve("second.jar")));
+    }
+
+    @Test
+    void testSyncDirectoryLinksOnTheSameFileStore() throws IOException {
+        Path jar = srcDir.resolve("app.jar");
+        Files.write(jar, new byte[100]);
+
+        FileUtils.syncDirectory(srcDir, destDir, true);
+
+        assertEquals(2, Files.getAttribute(jar, "unix:nlink"));
+    }
+}